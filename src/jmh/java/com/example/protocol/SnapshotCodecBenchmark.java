@@ -0,0 +1,98 @@
+package com.example.protocol;
+
+import java.nio.ByteBuffer;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Full-state serialization: keyframe and delta SNAPSHOT encoding and decoding
+ * for a client that can see the given number of players.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SnapshotCodecBenchmark {
+    @Param({"8", "32", "128"})
+    public int players;
+
+    private final PacketWriter writer = new PacketWriter(16 * 1024);
+    private final PacketReader reader = new PacketReader();
+    private final SnapshotHistory history = new SnapshotHistory();
+    private Snapshot base;
+    private Snapshot current;
+    private ByteBuffer keyframe;
+    private ByteBuffer delta;
+
+    @Setup
+    public void setup() {
+        Random random = new Random(42);
+        Map<Integer, Snapshot.Entry> baseEntries = new LinkedHashMap<>();
+        Map<Integer, Snapshot.Entry> currentEntries = new LinkedHashMap<>();
+        for (int i = 0; i < players; i++) {
+            int handle = 1 << 16 | i;
+            float x = random.nextFloat() * 800;
+            float y = random.nextFloat() * 600;
+            baseEntries.put(handle, new Snapshot.Entry(x, y, false));
+            // Roughly half the players move between snapshots
+            if (random.nextBoolean()) {
+                x += 10;
+            }
+            currentEntries.put(handle, new Snapshot.Entry(x, y, false));
+        }
+        base = new Snapshot(1, baseEntries);
+        current = new Snapshot(2, currentEntries);
+
+        SnapshotCodec.write(writer, null, base);
+        keyframe = copy(writer.toBuffer());
+        SnapshotCodec.write(writer, base, current);
+        delta = copy(writer.toBuffer());
+    }
+
+    private static ByteBuffer copy(ByteBuffer buffer) {
+        ByteBuffer copy = ByteBuffer.allocate(buffer.remaining());
+        copy.put(buffer).flip();
+        return copy;
+    }
+
+    @Benchmark
+    public int writeKeyframe() {
+        SnapshotCodec.write(writer, null, current);
+        return writer.size();
+    }
+
+    @Benchmark
+    public int writeDelta() {
+        SnapshotCodec.write(writer, base, current);
+        return writer.size();
+    }
+
+    @Benchmark
+    public Snapshot readKeyframe() {
+        reader.wrap(keyframe.duplicate()).readHeader();
+        return SnapshotCodec.read(reader, history);
+    }
+
+    @Benchmark
+    public Snapshot readDelta() {
+        history.put(base);
+        reader.wrap(delta.duplicate()).readHeader();
+        return SnapshotCodec.read(reader, history);
+    }
+}
@@ -0,0 +1,93 @@
+package com.example.server;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Broadcast fan-out: a position update relayed to every viewer, and a full
+ * simulation tick, with the batches flushed to loopback sockets. Rooms hold at
+ * most 64 players, so that is the largest size measured. With recording on, the
+ * room also writes its match log to a temporary directory. The simulated
+ * clients never send anything, so the idle timeout is turned off to keep them
+ * in the room.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Djustvibes.idleTimeoutSeconds=0")
+@State(Scope.Benchmark)
+public class BroadcastBenchmark {
+    @Param({"8", "32", "64"})
+    public int players;
+
+    @Param({"false", "true"})
+    public boolean recording;
+
+    private MatchRecorder recorder;
+    private Path logDirectory;
+    private RoomFixture fixture;
+    private InetSocketAddress mover;
+    private int nextMove;
+    private int positionSequence;
+
+    @Setup
+    public void setup() throws IOException {
+        if (recording) {
+            logDirectory = Files.createTempDirectory("match-logs");
+            recorder = new MatchRecorder(logDirectory);
+            recorder.start();
+        }
+        fixture = new RoomFixture(players, recorder);
+        mover = fixture.clients.get(0);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        int remaining = fixture.room.getPlayerCount();
+        fixture.close();
+        if (recorder != null) {
+            recorder.stop();
+            try (Stream<Path> logs = Files.list(logDirectory)) {
+                for (Path log : logs.collect(Collectors.toList())) {
+                    Files.delete(log);
+                }
+            }
+            Files.delete(logDirectory);
+        }
+        if (remaining != players) {
+            throw new IllegalStateException("Room shrank to " + remaining + " of " + players + " players, results are not valid");
+        }
+    }
+
+    @Benchmark
+    public void positionFanOut() {
+        // Alternate between two nearby spots so the update is never a no-op
+        nextMove ^= 1;
+        fixture.room.deliver(fixture.position(0, 400 + 10 * nextMove, 300, ++positionSequence), mover);
+        fixture.tick();
+    }
+
+    @Benchmark
+    public void tick() {
+        fixture.tick();
+    }
+}
@@ -0,0 +1,74 @@
+package com.example.server;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.example.protocol.Protocol;
+
+/**
+ * One client datagram through the room: copied into the inbound queue, parsed
+ * and dispatched to its handler. JOIN and DISCONNECT change the room, so only
+ * the steady-state message types are covered.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class InboundBenchmark {
+    @Param({"POS", "SHOOT", "SNAPSHOT_ACK"})
+    public String type;
+
+    private RoomFixture fixture;
+    private InetSocketAddress client;
+    private ByteBuffer packet;
+    private int positionSequence;
+
+    @Setup
+    public void setup() throws IOException {
+        fixture = new RoomFixture(8);
+        client = fixture.clients.get(0);
+        switch (type) {
+            case "POS":
+                // Built per call, positions are only applied with a rising sequence
+                break;
+            case "SHOOT":
+                // Rejected by the shot cooldown after the first one, so no bullets pile up
+                packet = fixture.packet(fixture.begin(Protocol.SHOOT)
+                    .writeFloat(200).writeFloat(150).writeFloat(1).writeFloat(0));
+                break;
+            default:
+                packet = fixture.packet(Protocol.SNAPSHOT_ACK, 1, 0, 0);
+                break;
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        fixture.close();
+    }
+
+    @Benchmark
+    public void deliverAndHandle() {
+        ByteBuffer datagram = packet != null ? packet.duplicate()
+            : fixture.position(0, 200, 150, ++positionSequence);
+        fixture.room.deliver(datagram, client);
+        fixture.drain();
+    }
+}
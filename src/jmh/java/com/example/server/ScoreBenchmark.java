@@ -0,0 +1,68 @@
+package com.example.server;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.example.protocol.PacketWriter;
+
+/**
+ * Recording a kill, encoding the full score table the way a SCORES message
+ * does, and a burst of kills going out as one SCORE_UPDATE.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ScoreBenchmark {
+    @Param({"8", "32", "128"})
+    public int players;
+
+    private final ScoreManager scoreManager = new ScoreManager();
+    private final PacketWriter writer = new PacketWriter(8 * 1024);
+    private int nextKiller;
+
+    @Setup
+    public void setup() {
+        for (int i = 0; i < players; i++) {
+            scoreManager.addPlayer(RoomFixture.handle(i));
+        }
+    }
+
+    @Benchmark
+    public int addKill() {
+        nextKiller = (nextKiller + 1) % players;
+        int score = scoreManager.addKill(RoomFixture.handle(nextKiller));
+        if (scoreManager.hasWinner()) {
+            scoreManager.reset();
+        }
+        return score;
+    }
+
+    @Benchmark
+    public int killBurst() {
+        for (int i = 0; i < 4; i++) {
+            addKill();
+        }
+        scoreManager.writeChanges(writer);
+        return writer.size();
+    }
+
+    @Benchmark
+    public int writeScores() {
+        scoreManager.writeScores(writer);
+        return writer.size();
+    }
+}
@@ -21,9 +21,9 @@ public class MyGame extends Game {
         setScreen(new ConnectionScreen(this));
     }
 
-    public void startGame(String serverIp) {
+    public void startGame(String serverIp, String playerName) {
         getScreen().dispose();
-        setScreen(new MainGameScreen(this, serverIp));
+        setScreen(new MainGameScreen(this, serverIp, playerName));
     }
 
     public void exit() {
@@ -0,0 +1,183 @@
+package com.example.bots;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Random;
+
+import com.example.network.GameClient;
+import com.example.protocol.Protocol;
+
+/**
+ * One scripted headless player. It talks to the server through a regular
+ * {@link GameClient}, moves along its pattern and fires at a fixed rate. Its own
+ * SHOOT echo from the server doubles as a round trip probe: a shot that is not
+ * echoed within {@link #ECHO_TIMEOUT_NANOS} counts as lost.
+ */
+public class Bot {
+    private static final float MAP_WIDTH = 800;
+    private static final float MAP_HEIGHT = 600;
+    private static final float SPEED = 200.0f; // Same as a human player
+    private static final long POSITION_INTERVAL_NANOS = 100_000_000L; // Matches the game client
+    private static final long SHOOT_INTERVAL_NANOS = 500_000_000L; // Matches the client cooldown
+    private static final long ECHO_TIMEOUT_NANOS = 2_000_000_000L;
+    private static final int MAX_SAMPLES = 4096;
+
+    public enum Pattern { CIRCLE, WANDER, STRAFE }
+
+    private final GameClient client;
+    private final Pattern pattern;
+    private final Random random;
+    private volatile int playerId; // 0 until the server answers the JOIN
+    private volatile boolean dead;
+    private float x, y;
+    private float dirX = 1, dirY = 0;
+    private float targetX, targetY;
+    private float phase;
+    private long nextPosition;
+    private long nextShot;
+
+    // Guarded by this: send times of shots waiting for their echo, and the results
+    private final ArrayDeque<Long> pendingShots = new ArrayDeque<>();
+    private long[] rttSamples = new long[MAX_SAMPLES];
+    private int rttCount;
+    private int shotsSent;
+    private int shotsLost;
+
+    public Bot(String host, int roomId, Pattern pattern, long seed) throws IOException {
+        this.client = new GameClient(host, roomId);
+        this.pattern = pattern;
+        this.random = new Random(seed);
+        this.phase = random.nextFloat() * (float) (2 * Math.PI);
+        registerHandlers();
+        client.sendJoin();
+    }
+
+    private void registerHandlers() {
+        client.registerHandler(Protocol.JOIN, message -> {
+            int id = message.readVarInt();
+            float spawnX = message.readFloat();
+            float spawnY = message.readFloat();
+            synchronized (this) {
+                if (playerId == 0) {
+                    x = spawnX;
+                    y = spawnY;
+                    targetX = spawnX;
+                    targetY = spawnY;
+                    playerId = id;
+                }
+            }
+        });
+        client.registerHandler(Protocol.SHOOT, message -> {
+            if (message.readVarInt() != playerId) return;
+            long now = System.nanoTime();
+            synchronized (this) {
+                expireShots(now);
+                Long sentAt = pendingShots.poll();
+                if (sentAt != null && rttCount < rttSamples.length) {
+                    rttSamples[rttCount++] = now - sentAt;
+                }
+            }
+        });
+        client.registerHandler(Protocol.DEATH, message -> {
+            if (message.readVarInt() == playerId) dead = true;
+        });
+        client.registerHandler(Protocol.RESPAWN, message -> {
+            if (message.readVarInt() != playerId) return;
+            float spawnX = message.readFloat();
+            float spawnY = message.readFloat();
+            synchronized (this) {
+                x = spawnX;
+                y = spawnY;
+                dead = false;
+            }
+        });
+        // Snapshots are only needed so the server gets acks and can measure our RTT
+        client.registerSnapshotHandler(snapshot -> {});
+    }
+
+    /**
+     * Advances the script. Called from the swarm's driver thread.
+     */
+    public void update(long now, float delta) {
+        if (playerId == 0 || dead) return;
+        synchronized (this) {
+            move(delta);
+        }
+        try {
+            if (now - nextPosition >= 0) {
+                nextPosition = now + POSITION_INTERVAL_NANOS;
+                client.sendPosition(playerId, x, y);
+            }
+            if (now - nextShot >= 0) {
+                nextShot = now + SHOOT_INTERVAL_NANOS;
+                synchronized (this) {
+                    expireShots(now);
+                    pendingShots.add(now);
+                    shotsSent++;
+                }
+                client.sendShoot(x, y, dirX, dirY);
+            }
+        } catch (IOException e) {
+            // Silent fail
+        }
+    }
+
+    private void move(float delta) {
+        float step = SPEED * delta;
+        switch (pattern) {
+            case CIRCLE:
+                phase += step / 120;
+                dirX = (float) -Math.sin(phase);
+                dirY = (float) Math.cos(phase);
+                break;
+            case WANDER:
+                float dx = targetX - x;
+                float dy = targetY - y;
+                float distance = (float) Math.sqrt(dx * dx + dy * dy);
+                if (distance < step) {
+                    targetX = 50 + random.nextFloat() * (MAP_WIDTH - 100);
+                    targetY = 50 + random.nextFloat() * (MAP_HEIGHT - 100);
+                    return;
+                }
+                dirX = dx / distance;
+                dirY = dy / distance;
+                break;
+            case STRAFE:
+                if (x < 50 || x > MAP_WIDTH - 50) dirX = x < 50 ? 1 : -1;
+                dirY = 0;
+                break;
+        }
+        x = Math.max(0, Math.min(MAP_WIDTH, x + dirX * step));
+        y = Math.max(0, Math.min(MAP_HEIGHT, y + dirY * step));
+    }
+
+    // Called with the lock held
+    private void expireShots(long now) {
+        while (!pendingShots.isEmpty() && now - pendingShots.peek() > ECHO_TIMEOUT_NANOS) {
+            pendingShots.poll();
+            shotsLost++;
+        }
+    }
+
+    public boolean isJoined() {
+        return playerId != 0;
+    }
+
+    /**
+     * Adds this bot's samples since the last call to the swarm's totals and starts over.
+     */
+    public synchronized void drainStats(BotSwarm.StepStats stats) {
+        expireShots(System.nanoTime());
+        stats.addRtts(Arrays.copyOf(rttSamples, rttCount));
+        stats.shotsSent += shotsSent;
+        stats.shotsLost += shotsLost;
+        rttCount = 0;
+        shotsSent = 0;
+        shotsLost = 0;
+    }
+
+    public void stop() {
+        client.stop();
+    }
+}
@@ -0,0 +1,218 @@
+package com.example.bots;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.lang.management.ManagementFactory;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Headless load generator. Connects a growing number of scripted bots to a
+ * running server and prints one line per step, so the output is a scaling curve:
+ * server tick time, shot round trip percentiles, loss and CPU per bot count.
+ *
+ * Usage: BotSwarm [--host localhost] [--bots 50,100,200] [--step-seconds 20]
+ *                 [--room-size 32] [--metrics http://localhost:PORT/metrics]
+ *
+ * Tick time and server CPU come from the server's metrics endpoint, which is
+ * off unless the server was given -Djustvibes.metricsPort; without it those
+ * columns are blank.
+ */
+public class BotSwarm {
+    private static final long DRIVER_INTERVAL_NANOS = 20_000_000L; // Bots move at 50 Hz
+    private static final long JOIN_TIMEOUT_NANOS = 10_000_000_000L;
+
+    private final String host;
+    private final int roomSize;
+    private final String metricsUrl;
+    private final List<Bot> bots = new ArrayList<>();
+    private volatile boolean running = true;
+
+    static class StepStats {
+        final List<long[]> rtts = new ArrayList<>();
+        long shotsSent;
+        long shotsLost;
+
+        void addRtts(long[] samples) {
+            rtts.add(samples);
+        }
+
+        long[] sortedRtts() {
+            long[] all = rtts.stream().flatMapToLong(Arrays::stream).toArray();
+            Arrays.sort(all);
+            return all;
+        }
+    }
+
+    public BotSwarm(String host, int roomSize, String metricsUrl) {
+        this.host = host;
+        this.roomSize = roomSize;
+        this.metricsUrl = metricsUrl;
+    }
+
+    private void driverLoop() {
+        long last = System.nanoTime();
+        while (running) {
+            long now = System.nanoTime();
+            float delta = (now - last) / 1_000_000_000f;
+            last = now;
+            List<Bot> current;
+            synchronized (bots) {
+                current = new ArrayList<>(bots);
+            }
+            for (Bot bot : current) {
+                bot.update(now, delta);
+            }
+            long sleep = DRIVER_INTERVAL_NANOS - (System.nanoTime() - now);
+            if (sleep > 0) {
+                try {
+                    Thread.sleep(sleep / 1_000_000L, (int) (sleep % 1_000_000L));
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+        }
+    }
+
+    private void growTo(int count) throws IOException, InterruptedException {
+        Bot.Pattern[] patterns = Bot.Pattern.values();
+        List<Bot> added = new ArrayList<>();
+        while (bots.size() + added.size() < count) {
+            int index = bots.size() + added.size();
+            added.add(new Bot(host, index / roomSize, patterns[index % patterns.length], index));
+        }
+        long deadline = System.nanoTime() + JOIN_TIMEOUT_NANOS;
+        for (Bot bot : added) {
+            while (!bot.isJoined() && System.nanoTime() < deadline) {
+                Thread.sleep(10);
+            }
+        }
+        synchronized (bots) {
+            bots.addAll(added);
+        }
+    }
+
+    private void run(int[] steps, long stepNanos) throws IOException, InterruptedException {
+        Thread driver = new Thread(this::driverLoop, "BotDriver");
+        driver.setDaemon(true);
+        driver.start();
+
+        com.sun.management.OperatingSystemMXBean os =
+            (com.sun.management.OperatingSystemMXBean) ManagementFactory.getOperatingSystemMXBean();
+        System.out.println(String.format("%6s %7s %9s %9s %9s %9s %7s %10s %10s",
+            "bots", "joined", "tick_ms", "rtt_p50", "rtt_p95", "rtt_p99", "loss%", "srv_cpu%", "bots_cpu%"));
+
+        for (int count : steps) {
+            growTo(count);
+            // Let the new bots settle, then discard what was measured while joining
+            Thread.sleep(Math.min(2000, stepNanos / 1_000_000L / 4));
+            drainAll();
+            Map<String, Double> serverBefore = scrape();
+            long cpuBefore = os.getProcessCpuTime();
+            long start = System.nanoTime();
+
+            Thread.sleep(stepNanos / 1_000_000L);
+
+            long elapsed = System.nanoTime() - start;
+            double botsCpu = 100.0 * (os.getProcessCpuTime() - cpuBefore) / elapsed;
+            Map<String, Double> serverAfter = scrape();
+            StepStats stats = drainAll();
+            long[] rtts = stats.sortedRtts();
+            long joined = bots.stream().filter(Bot::isJoined).count();
+
+            double tickMillis = Double.NaN;
+            double serverCpu = Double.NaN;
+            if (serverBefore != null && serverAfter != null) {
+                double ticks = delta(serverBefore, serverAfter, "justvibes_tick_duration_seconds_count");
+                double tickSeconds = delta(serverBefore, serverAfter, "justvibes_tick_duration_seconds_sum");
+                tickMillis = ticks > 0 ? tickSeconds / ticks * 1000 : Double.NaN;
+                serverCpu = 100.0 * delta(serverBefore, serverAfter, "justvibes_process_cpu_milliseconds_total")
+                    * 1_000_000L / elapsed;
+            }
+            double loss = stats.shotsSent == 0 ? 0 : 100.0 * stats.shotsLost / stats.shotsSent;
+            System.out.println(String.format("%6d %7d %9.3f %9.2f %9.2f %9.2f %7.2f %10.1f %10.1f",
+                count, joined, tickMillis, percentile(rtts, 50), percentile(rtts, 95), percentile(rtts, 99),
+                loss, serverCpu, botsCpu));
+        }
+
+        running = false;
+        for (Bot bot : bots) {
+            bot.stop();
+        }
+    }
+
+    private StepStats drainAll() {
+        StepStats stats = new StepStats();
+        synchronized (bots) {
+            for (Bot bot : bots) {
+                bot.drainStats(stats);
+            }
+        }
+        return stats;
+    }
+
+    // Milliseconds
+    private static double percentile(long[] sorted, int percentile) {
+        if (sorted.length == 0) return Double.NaN;
+        int index = Math.min(sorted.length - 1, (int) Math.ceil(percentile / 100.0 * sorted.length) - 1);
+        return sorted[Math.max(0, index)] / 1_000_000.0;
+    }
+
+    private static double delta(Map<String, Double> before, Map<String, Double> after, String name) {
+        return after.getOrDefault(name, 0.0) - before.getOrDefault(name, 0.0);
+    }
+
+    /**
+     * Reads the unlabelled series from the server's Prometheus endpoint, or null
+     * if it is not reachable.
+     */
+    private Map<String, Double> scrape() {
+        if (metricsUrl == null || metricsUrl.isEmpty()) return null;
+        Map<String, Double> values = new HashMap<>();
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(new URL(metricsUrl).openStream(), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.startsWith("#") || line.indexOf('{') >= 0) continue;
+                int space = line.indexOf(' ');
+                if (space > 0) {
+                    values.put(line.substring(0, space), Double.parseDouble(line.substring(space + 1)));
+                }
+            }
+            return values;
+        } catch (IOException | NumberFormatException e) {
+            return null;
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        String host = "localhost";
+        String bots = "50,100,200";
+        int stepSeconds = 20;
+        int roomSize = 32;
+        String metricsUrl = null;
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            switch (args[i]) {
+                case "--host": host = args[i + 1]; break;
+                case "--bots": bots = args[i + 1]; break;
+                case "--step-seconds": stepSeconds = Integer.parseInt(args[i + 1]); break;
+                case "--room-size": roomSize = Integer.parseInt(args[i + 1]); break;
+                case "--metrics": metricsUrl = args[i + 1]; break;
+                default:
+                    System.err.println("Unknown option " + args[i]);
+                    System.exit(1);
+            }
+        }
+        int[] steps = Arrays.stream(bots.split(",")).mapToInt(s -> Integer.parseInt(s.trim())).toArray();
+
+        new BotSwarm(host, roomSize, metricsUrl).run(steps, stepSeconds * 1_000_000_000L);
+        // Client receive threads are not daemons
+        System.exit(0);
+    }
+}
@@ -12,12 +12,12 @@ public class Bullet {
     
     private final Vector2 position;
     private final Vector2 velocity;
-    private final String ownerId;
+    private final int ownerId;
     private final Circle bounds;
     public boolean active;
     protected boolean penetratesBoundary;  // Whether the bullet can pass through map boundaries
     
-    public Bullet(String ownerId, float x, float y, float dirX, float dirY) {
+    public Bullet(int ownerId, float x, float y, float dirX, float dirY) {
         this.ownerId = ownerId;
         this.position = new Vector2(x, y);
         this.velocity = new Vector2(dirX, dirY).nor().scl(SPEED);
@@ -68,13 +68,13 @@ public class Bullet {
     }
     
     public boolean checkCollision(Player player) {
-        if (!active || player.isDead() || player.getId().equals(ownerId)) {
+        if (!active || player.isDead() || player.getId() == ownerId) {
             return false;
         }
         return Intersector.overlaps(bounds, player.getBounds());
     }
     
-    public String getOwnerId() {
+    public int getOwnerId() {
         return ownerId;
     }
     
@@ -13,7 +13,7 @@ public class Player {
     private static final float HEALTH_BAR_HEIGHT = 5f;
     private static final float DIRECTION_INDICATOR_LENGTH = SIZE;
     
-    protected final String id;
+    protected final int id;
     private final Vector2 worldPosition;
     private final Vector2 screenPosition;
     private final Vector2 direction;
@@ -25,7 +25,7 @@ public class Player {
     private Vector2 targetWorldPosition;
     private static final float LERP_ALPHA = 0.1f;
     
-    public Player(String id, float worldX, float worldY, boolean isLocal) {
+    public Player(int id, float worldX, float worldY, boolean isLocal) {
         this.id = id;
         this.worldPosition = new Vector2(worldX, worldY);
         this.screenPosition = new Vector2(worldX, worldY); // Will be updated in updateScreenPosition
@@ -121,7 +121,7 @@ public class Player {
         return isLocal;
     }
     
-    public String getId() {
+    public int getId() {
         return id;
     }
     
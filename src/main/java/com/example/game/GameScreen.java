@@ -5,48 +5,93 @@ import com.badlogic.gdx.Screen;
 import com.badlogic.gdx.graphics.g2d.SpriteBatch;
 import com.example.ui.ScoreDisplay;
 import com.example.network.GameClient;
-import org.json.JSONException;
-import org.json.JSONObject;
+import com.example.protocol.PacketReader;
+import com.example.protocol.Protocol;
 
-import java.util.HashMap;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class GameScreen implements Screen {
     private final SpriteBatch batch;
     private final ScoreDisplay scoreDisplay;
     @SuppressWarnings("unused")
     private final GameClient gameClient;
+    // Display names by player handle, each sent once by the server
+    private final Map<Integer, String> playerNames = new ConcurrentHashMap<>();
+    // Scores by player handle: replaced by each SCORES table, patched by SCORE_UPDATE
+    private final Map<Integer, Integer> scores = new ConcurrentHashMap<>();
+    // Handles in the server's rank order, only touched by the receive thread
+    private final List<Integer> ranking = new ArrayList<>();
 
-    public GameScreen(Game game, String playerId, GameClient gameClient) {
+    public GameScreen(Game game, GameClient gameClient) {
         this.batch = new SpriteBatch();
-        this.scoreDisplay = new ScoreDisplay(10, 600 - 10, playerId);
+        this.scoreDisplay = new ScoreDisplay(10, 600 - 10);
         this.gameClient = gameClient;
         
-        gameClient.registerJsonHandler("scores", this::handleScoreUpdate);
-        gameClient.registerJsonHandler("gameOver", this::handleGameOver);
+        gameClient.registerHandler(Protocol.NAME, this::handleName);
+        gameClient.registerHandler(Protocol.SCORES, this::handleScores);
+        gameClient.registerHandler(Protocol.SCORE_UPDATE, this::handleScoreUpdate);
+        gameClient.registerHandler(Protocol.GAME_OVER, this::handleGameOver);
     }
 
-    private void handleScoreUpdate(JSONObject json) {
-        try {
-            JSONObject scores = json.getJSONObject("scores");
-            Map<String, Integer> scoreMap = new HashMap<>();
-            for (String key : scores.keySet()) {
-                scoreMap.put(key, scores.getInt(key));
-            }
-            scoreDisplay.updateScores(scoreMap, json.optString("winner", null));
-        } catch (JSONException e) {
-            // Silent fail
+    public void setLocalPlayerId(int playerId) {
+        scoreDisplay.setLocalPlayerId(playerId);
+    }
+
+    private String getPlayerName(int playerId) {
+        String name = playerNames.get(playerId);
+        return name != null ? name : "Player " + playerId;
+    }
+
+    private void handleName(PacketReader message) {
+        int playerId = message.readVarInt();
+        playerNames.put(playerId, message.readString());
+    }
+
+    // The full table, already in rank order
+    private void handleScores(PacketReader message) {
+        scores.clear();
+        ranking.clear();
+        int count = message.readVarInt();
+        for (int i = 0; i < count; i++) {
+            int playerId = message.readVarInt();
+            scores.put(playerId, message.readVarInt());
+            ranking.add(playerId);
         }
+        updateDisplay(message);
     }
 
-    private void handleGameOver(JSONObject json) {
-        try {
-            @SuppressWarnings("unused")
-            String winner = json.getString("winner");
-            // Game over handling is done through score display
-        } catch (JSONException e) {
-            // Silent fail
+    /**
+     * Re-ranks each changed player the way the server does: behind everyone on
+     * the same score or better, who got there first, and ahead of the rest.
+     */
+    private void handleScoreUpdate(PacketReader message) {
+        int count = message.readVarInt();
+        for (int i = 0; i < count; i++) {
+            int playerId = message.readVarInt();
+            int score = message.readVarInt();
+            scores.put(playerId, score);
+            ranking.remove(Integer.valueOf(playerId));
+            int rank = 0;
+            while (rank < ranking.size() && scores.getOrDefault(ranking.get(rank), 0) >= score) {
+                rank++;
+            }
+            ranking.add(rank, playerId);
         }
+        updateDisplay(message);
+    }
+
+    private void updateDisplay(PacketReader message) {
+        String winner = message.readBoolean() ? getPlayerName(message.readVarInt()) : null;
+        scoreDisplay.updateScores(ranking, scores, this::getPlayerName, winner);
+    }
+
+    private void handleGameOver(PacketReader message) {
+        @SuppressWarnings("unused")
+        int winner = message.readVarInt();
+        // Game over handling is done through score display
     }
 
     @Override
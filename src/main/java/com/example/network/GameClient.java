@@ -4,33 +4,70 @@ import java.io.IOException;
 import java.net.DatagramPacket;
 import java.net.DatagramSocket;
 import java.net.InetAddress;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.Map;
 import java.util.function.Consumer;
-import org.json.JSONObject;
-import org.json.JSONException;
+
+import com.example.protocol.FragmentAssembler;
+import com.example.protocol.PacketReader;
+import com.example.protocol.PacketWriter;
+import com.example.protocol.Protocol;
+import com.example.protocol.Snapshot;
+import com.example.protocol.SnapshotCodec;
+import com.example.protocol.SnapshotHistory;
 
 public class GameClient {
     private static final int SERVER_PORT = 7777;
-    private static final int BUFFER_SIZE = 1024;
+    private static final int BUFFER_SIZE = Protocol.MAX_PACKET_SIZE;
+    // The server sends at least every KEEPALIVE_MILLIS; missing five in a row means it lost track of us
+    private static final int RESUME_AFTER_MILLIS = 5 * Protocol.KEEPALIVE_MILLIS;
+    private static final long RESUME_AFTER_NANOS = RESUME_AFTER_MILLIS * 1_000_000L;
     private final DatagramSocket socket;
     private final InetAddress serverAddress;
+    private final int roomId;
     private final byte[] receiveBuffer = new byte[BUFFER_SIZE];
+    private final PacketWriter writer = new PacketWriter();
+    private final SnapshotHistory snapshots = new SnapshotHistory();
+    private int latestSnapshot = 0;
     private boolean running = true;
     private Runnable onServerShutdown;
+    // Session from the last JOIN, 0 until the server sends one or after it expired
+    private volatile long sessionToken;
+    private volatile long lastReceiveTime = System.nanoTime();
+    // Only touched by the receive thread: the newest batch seen, so stale positions can
+    // be dropped, and the reliable channel's next sequence and the messages that
+    // arrived ahead of it (bit i of the mask is nextReliable + i)
+    private int newestBatch = 0;
+    private int nextReliable = 1;
+    private final byte[][] earlyReliable = new byte[Protocol.RELIABLE_WINDOW][];
+    private int earlyReliableMask = 0;
+    private int positionSequence = 0;
+    private final FragmentAssembler fragments = new FragmentAssembler();
 
-    private final Map<String, Consumer<String[]>> messageHandlers = new ConcurrentHashMap<>();
-    private final Map<String, Consumer<JSONObject>> jsonMessageHandlers = new ConcurrentHashMap<>();
+    private final Map<Byte, Consumer<PacketReader>> messageHandlers = new ConcurrentHashMap<>();
 
     public GameClient(String serverHost) throws IOException {
+        this(serverHost, 0);
+    }
+
+    /**
+     * Connects to one room on the server. Rooms are independent matches sharing
+     * the server's port; joining an unused room id starts a new match.
+     */
+    public GameClient(String serverHost, int roomId) throws IOException {
         socket = new DatagramSocket();
+        // Wake up now and then to notice when the server has gone quiet
+        socket.setSoTimeout(RESUME_AFTER_MILLIS);
         serverAddress = InetAddress.getByName(serverHost);
+        this.roomId = roomId;
         setupDefaultHandlers();
         startReceiving();
     }
 
     private void setupDefaultHandlers() {
-        registerHandler("SHUTDOWN", parts -> {
+        registerHandler(Protocol.SHUTDOWN, message -> {
             if (running) {
                 if (onServerShutdown != null) {
                     onServerShutdown.run();
@@ -38,18 +75,41 @@ public class GameClient {
                 stop();
             }
         });
+        registerHandler(Protocol.SESSION, message -> {
+            long token = message.readLong();
+            if (token == 0 && sessionToken != 0) {
+                System.out.println("Session expired, rejoin to keep playing");
+            }
+            sessionToken = token;
+        });
     }
 
     public void setOnServerShutdown(Runnable callback) {
         this.onServerShutdown = callback;
     }
 
-    public void registerSyncHandler(Consumer<String[]> handler) {
-        registerHandler("SYNC", handler);
+    /**
+     * Registers a callback for each newer server snapshot. Deltas are rebuilt
+     * against the local snapshot history and acknowledged before the callback runs,
+     * so the handler always receives the complete player set.
+     */
+    public void registerSnapshotHandler(Consumer<Snapshot> handler) {
+        registerHandler(Protocol.SNAPSHOT, message -> {
+            Snapshot snapshot = SnapshotCodec.read(message, snapshots);
+            // Baseline already gone, or an older packet arriving late
+            if (snapshot == null || snapshot.getSequence() - latestSnapshot <= 0) return;
+            latestSnapshot = snapshot.getSequence();
+            try {
+                sendSnapshotAck(latestSnapshot);
+            } catch (IOException e) {
+                // Silent fail
+            }
+            handler.accept(snapshot);
+        });
     }
 
-    public void registerPosHandler(Consumer<String[]> handler) {
-        registerHandler("POS", handler);
+    public void registerPosHandler(Consumer<PacketReader> handler) {
+        registerHandler(Protocol.POS, handler);
     }
 
     private void startReceiving() {
@@ -62,7 +122,10 @@ public class GameClient {
             try {
                 DatagramPacket packet = new DatagramPacket(receiveBuffer, receiveBuffer.length);
                 socket.receive(packet);
+                lastReceiveTime = System.nanoTime();
                 handlePacket(packet);
+            } catch (SocketTimeoutException e) {
+                resumeIfSilent();
             } catch (IOException e) {
                 if (running) {
                     // Silent fail
@@ -71,73 +134,174 @@ public class GameClient {
         }
     }
 
-    private void handlePacket(DatagramPacket packet) {
-        String message = new String(packet.getData(), 0, packet.getLength());
-        System.out.println("[Client] Received message: " + message);
-        
+    /**
+     * Presents the session token when nothing has arrived for a while. If our
+     * address changed, the server moves the session here and everything resumes
+     * without a new JOIN; if it did not, the answer is just a resync.
+     */
+    private void resumeIfSilent() {
+        long token = sessionToken;
+        if (token == 0 || System.nanoTime() - lastReceiveTime < RESUME_AFTER_NANOS) return;
         try {
-            JSONObject json = new JSONObject(message);
-            String type = json.getString("type");
-            System.out.println("[Client] Handling JSON message of type: " + type);
-            Consumer<JSONObject> handler = jsonMessageHandlers.get(type);
-            if (handler != null) {
-                handler.accept(json);
-                return;
+            synchronized (writer) {
+                send(begin(Protocol.SESSION).writeLong(token));
             }
-        } catch (JSONException e) {
-            String[] parts = message.split("\\|");
-            String messageType = parts[0];
-            System.out.println("[Client] Handling message of type: " + messageType);
-
-            Consumer<String[]> handler = messageHandlers.get(messageType);
-            if (handler != null) {
-                handler.accept(parts);
+        } catch (IOException e) {
+            // Silent fail
+        }
+    }
+
+    private void handlePacket(DatagramPacket packet) {
+        PacketReader message = new PacketReader(ByteBuffer.wrap(packet.getData(), 0, packet.getLength()));
+        try {
+            byte type = message.readHeader();
+            if (type == Protocol.BATCH) {
+                // The server coalesces a tick's worth of messages into one datagram
+                int sequence = message.readVarInt();
+                boolean stale = newestBatch != 0 && sequence - newestBatch <= 0;
+                if (!stale) {
+                    newestBatch = sequence;
+                }
+                while (message.remaining() > 0) {
+                    PacketReader entry = message.readSlice(message.readVarInt());
+                    byte entryType = entry.readType();
+                    if (entryType == Protocol.RELIABLE) {
+                        receiveReliable(entry);
+                    } else if (!stale || entryType != Protocol.POS) {
+                        dispatch(entryType, entry);
+                    }
+                }
+            } else if (type == Protocol.FRAGMENT) {
+                // Too big for one datagram, dispatched once the last piece is in
+                PacketReader whole = fragments.add(message, System.nanoTime());
+                if (whole != null) {
+                    byte wholeType = whole.readType();
+                    if (wholeType == Protocol.RELIABLE) {
+                        receiveReliable(whole);
+                    } else {
+                        dispatch(wholeType, whole);
+                    }
+                }
+            } else {
+                dispatch(type, message);
             }
+        } catch (RuntimeException e) {
+            // Truncated or malformed packet, drop it
+        }
+    }
+
+    /**
+     * Delivers reliable messages in sequence order, exactly once. One that
+     * arrives ahead of a gap is held until the gap is filled by a resend.
+     */
+    private void receiveReliable(PacketReader entry) {
+        int sequence = entry.readVarInt();
+        int offset = sequence - nextReliable;
+        if (offset < 0 || offset >= Protocol.RELIABLE_WINDOW) return; // Duplicate, or too far ahead to hold
+        if (offset > 0) {
+            earlyReliable[sequence & (Protocol.RELIABLE_WINDOW - 1)] = entry.readRemaining();
+            earlyReliableMask |= 1 << offset;
+            return;
+        }
+        deliverReliable(entry);
+        while ((earlyReliableMask & 1) != 0) {
+            int index = nextReliable & (Protocol.RELIABLE_WINDOW - 1);
+            PacketReader held = new PacketReader(ByteBuffer.wrap(earlyReliable[index]));
+            earlyReliable[index] = null;
+            deliverReliable(held);
         }
     }
 
+    private void deliverReliable(PacketReader message) {
+        nextReliable++;
+        earlyReliableMask >>>= 1;
+        try {
+            dispatch(message.readType(), message);
+        } catch (RuntimeException e) {
+            // Malformed message, its sequence is used up all the same
+        }
+    }
+
+    private void dispatch(byte type, PacketReader message) {
+        Consumer<PacketReader> handler = messageHandlers.get(type);
+        if (handler != null) {
+            handler.accept(message);
+        }
+    }
+
+    /**
+     * Joins as a guest, who plays under a name the server makes up and keeps no
+     * career on its leaderboard.
+     */
     public void sendJoin() throws IOException {
-        send("JOIN");
+        sendJoin("");
     }
 
-    public void sendPosition(String playerId, float x, float y) throws IOException {
-        send("POS|" + playerId + "|" + x + "|" + y);
+    /**
+     * Joins under the given name. Careers on the server's leaderboard are kept by
+     * name, so the same name picks up the same career next time.
+     */
+    public void sendJoin(String name) throws IOException {
+        synchronized (writer) {
+            send(begin(Protocol.JOIN).writeString(name));
+        }
+    }
+
+    public void sendPosition(int playerId, float x, float y) throws IOException {
+        synchronized (writer) {
+            send(begin(Protocol.POS)
+                .writeVarInt(playerId)
+                .writeFloat(x)
+                .writeFloat(y)
+                .writeVarInt(++positionSequence));
+        }
     }
 
     public void sendShoot(float x, float y, float dirX, float dirY) throws IOException {
-        send("SHOOT|" + dirX + "|" + dirY);
+        synchronized (writer) {
+            send(begin(Protocol.SHOOT)
+                .writeFloat(x)
+                .writeFloat(y)
+                .writeFloat(dirX)
+                .writeFloat(dirY));
+        }
     }
 
-    public void sendDeath() throws IOException {
-        send("DEATH");
+    public void sendSnapshotAck(int sequence) throws IOException {
+        synchronized (writer) {
+            // The reliable channel's ack rides along: everything before nextReliable,
+            // plus whatever is held beyond it
+            send(begin(Protocol.SNAPSHOT_ACK)
+                .writeVarInt(sequence)
+                .writeVarInt(nextReliable - 1)
+                .writeVarInt(earlyReliableMask));
+        }
     }
 
-    public void sendDamage(String shooterId, int damage) throws IOException {
-        send("DAMAGE|" + shooterId + "|" + damage);
+    public void sendDisconnect() throws IOException {
+        synchronized (writer) {
+            send(begin(Protocol.DISCONNECT));
+        }
     }
 
-    public void sendRespawn() throws IOException {
-        send("RESPAWN");
+    // Every client packet names its room right after the header
+    private PacketWriter begin(byte type) {
+        return writer.begin(type).writeVarInt(roomId);
     }
 
-    public void sendDisconnect() throws IOException {
-        send("DISCONNECT");
+    public int getRoomId() {
+        return roomId;
     }
 
-    private void send(String message) throws IOException {
-        byte[] buffer = message.getBytes();
-        DatagramPacket packet = new DatagramPacket(buffer, buffer.length, serverAddress, SERVER_PORT);
+    private void send(PacketWriter message) throws IOException {
+        DatagramPacket packet = new DatagramPacket(message.toByteArray(), message.size(), serverAddress, SERVER_PORT);
         socket.send(packet);
     }
 
-    public void registerHandler(String messageType, Consumer<String[]> handler) {
+    public void registerHandler(byte messageType, Consumer<PacketReader> handler) {
         messageHandlers.put(messageType, handler);
     }
 
-    public void registerJsonHandler(String messageType, Consumer<JSONObject> handler) {
-        jsonMessageHandlers.put(messageType, handler);
-    }
-
     public void stop() {
         try {
             if (running) {
@@ -149,4 +313,4 @@ public class GameClient {
         running = false;
         socket.close();
     }
-} 
\ No newline at end of file
+}
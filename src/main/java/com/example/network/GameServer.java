@@ -5,14 +5,20 @@ import java.io.IOException;
 import java.net.DatagramPacket;
 import java.net.DatagramSocket;
 import java.net.InetAddress;
+import java.nio.ByteBuffer;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 
+import com.example.protocol.PacketReader;
+import com.example.protocol.PacketWriter;
+import com.example.protocol.Protocol;
+
 public class GameServer {
     private final DatagramSocket socket;
     private final Map<String, ConnectionInfo> connections = new ConcurrentHashMap<>();
     private final ClientManager clientManager = new ClientManager();
-    private final byte[] buffer = new byte[256];
+    private final byte[] buffer = new byte[Protocol.MAX_PACKET_SIZE];
+    private final PacketWriter writer = new PacketWriter();
     private boolean running;
     private static final float MAP_WIDTH = 800;
     private static final float MAP_HEIGHT = 600;
@@ -40,11 +46,11 @@ public class GameServer {
                 DatagramPacket packet = new DatagramPacket(buffer, buffer.length);
                 socket.receive(packet);
 
-                String message = new String(packet.getData(), 0, packet.getLength());
-                String[] parts = message.split("\\|");
-
+                PacketReader message = new PacketReader(ByteBuffer.wrap(packet.getData(), 0, packet.getLength()));
                 String connectionKey = packet.getAddress().getHostAddress() + ":" + packet.getPort();
-                handleMessage(connectionKey, parts, packet.getAddress(), packet.getPort());
+                handleMessage(connectionKey, message, packet.getAddress(), packet.getPort());
+            } catch (RuntimeException e) {
+                // Truncated or malformed packet, drop it
             } catch (IOException e) {
                 if (running) {
                     e.printStackTrace();
@@ -53,10 +59,12 @@ public class GameServer {
         }
     }
 
-    private void handleMessage(String connectionKey, String[] parts, InetAddress address, int port) throws IOException {
+    private void handleMessage(String connectionKey, PacketReader message, InetAddress address, int port) throws IOException {
         ConnectionInfo connection = connections.get(connectionKey);
+        byte type = message.readHeader();
+        message.readVarInt(); // Room id, this server only hosts a single match
         
-        if (parts[0].equals("JOIN")) {
+        if (type == Protocol.JOIN) {
             if (connection == null) {
                 float[] spawnPoint = getRandomSpawnPoint();
                 int clientId = clientManager.createNewClient(spawnPoint[0], spawnPoint[1]);
@@ -77,82 +85,61 @@ public class GameServer {
         ClientManager.ClientInfo client = clientManager.getClient(clientId);
         if (client == null) return;
 
-        switch (parts[0]) {
-            case "POS":
-                handlePosition(clientId, parts);
-                break;
-            case "SHOOT":
-                handleShoot(clientId, client, parts);
+        switch (type) {
+            case Protocol.POS:
+                handlePosition(clientId, message);
                 break;
-            case "DAMAGE":
-                handleDamage(clientId, parts);
-                break;
-            case "RESPAWN":
-                handleRespawn(clientId, client);
+            case Protocol.SHOOT:
+                handleShoot(clientId, client, message);
                 break;
         }
     }
 
     private void sendInitialState(int clientId, float[] spawnPoint, InetAddress address, int port) throws IOException {
         // Send client their ID and spawn position
-        String joinMessage = String.format("JOIN|%d|%f|%f", clientId, spawnPoint[0], spawnPoint[1]);
-        send(joinMessage, address, port);
+        writer.begin(Protocol.JOIN)
+            .writeVarInt(clientId)
+            .writeFloat(spawnPoint[0])
+            .writeFloat(spawnPoint[1]);
+        send(writer, address, port);
         
         // Send existing clients to new client
         for (Map.Entry<String, ConnectionInfo> entry : connections.entrySet()) {
             ClientManager.ClientInfo existingClient = clientManager.getClient(entry.getValue().clientId);
             if (existingClient != null) {
-                String clientMessage = formatClientMessage(existingClient);
-                send(clientMessage, address, port);
+                send(writeClientMessage(existingClient), address, port);
             }
         }
     }
 
-    private String formatClientMessage(ClientManager.ClientInfo client) {
-        return String.format("CLIENT|%d|%f|%f|%f|%f|%d|%b",
-            client.id,
-            client.position.x,
-            client.position.y,
-            client.direction.x,
-            client.direction.y,
-            client.health,
-            client.isDead
-        );
+    private PacketWriter writeClientMessage(ClientManager.ClientInfo client) {
+        return writer.begin(Protocol.CLIENT)
+            .writeVarInt(client.id)
+            .writeFloat(client.position.x)
+            .writeFloat(client.position.y)
+            .writeFloat(client.direction.x)
+            .writeFloat(client.direction.y)
+            .writeVarInt(client.health)
+            .writeBoolean(client.isDead);
     }
 
-    private void handlePosition(int clientId, String[] parts) throws IOException {
-        if (parts.length < 3) return;
-        float x = Float.parseFloat(parts[1]);
-        float y = Float.parseFloat(parts[2]);
+    private void handlePosition(int clientId, PacketReader message) throws IOException {
+        message.readVarInt(); // playerId, the connection already identifies the sender
+        float x = message.readFloat();
+        float y = message.readFloat();
         clientManager.updateClientPosition(clientId, x, y);
         broadcastPosition(clientId, x, y);
     }
 
-    private void handleShoot(int clientId, ClientManager.ClientInfo client, String[] parts) throws IOException {
-        if (parts.length < 3) return;
-        float dirX = Float.parseFloat(parts[1]);
-        float dirY = Float.parseFloat(parts[2]);
+    private void handleShoot(int clientId, ClientManager.ClientInfo client, PacketReader message) throws IOException {
+        message.readFloat(); // x
+        message.readFloat(); // y
+        float dirX = message.readFloat();
+        float dirY = message.readFloat();
         clientManager.updateClientDirection(clientId, dirX, dirY);
         broadcastShot(clientId, client.position.x, client.position.y, dirX, dirY);
     }
 
-    private void handleDamage(int clientId, String[] parts) throws IOException {
-        if (parts.length < 3) return;
-        int shooterId = Integer.parseInt(parts[1]);
-        int damage = Integer.parseInt(parts[2]);
-        clientManager.setClientDead(clientId, true);
-        broadcastDeath(clientId, shooterId);
-    }
-
-    private void handleRespawn(int clientId, ClientManager.ClientInfo client) throws IOException {
-        if (!client.isDead) return;
-        float[] spawnPoint = getRandomSpawnPoint();
-        clientManager.updateClientPosition(clientId, spawnPoint[0], spawnPoint[1]);
-        clientManager.setClientDead(clientId, false);
-        clientManager.updateClientHealth(clientId, 100);
-        broadcastRespawn(clientId, spawnPoint[0], spawnPoint[1]);
-    }
-
     private float[] getRandomSpawnPoint() {
         return new float[]{
             MathUtils.random(100, MAP_WIDTH - 100),
@@ -161,32 +148,37 @@ public class GameServer {
     }
 
     private void broadcastNewClient(int clientId, float x, float y) throws IOException {
-        String message = String.format("CLIENT|%d|%f|%f|1|0|100|false", clientId, x, y);
-        broadcast(message, null);
+        writer.begin(Protocol.CLIENT)
+            .writeVarInt(clientId)
+            .writeFloat(x)
+            .writeFloat(y)
+            .writeFloat(1)
+            .writeFloat(0)
+            .writeVarInt(100)
+            .writeBoolean(false);
+        broadcast(writer, null);
     }
 
     private void broadcastPosition(int clientId, float x, float y) throws IOException {
-        String message = String.format("POS|%d|%f|%f", clientId, x, y);
-        broadcast(message, null);
+        writer.begin(Protocol.POS)
+            .writeVarInt(clientId)
+            .writeFloat(x)
+            .writeFloat(y);
+        broadcast(writer, null);
     }
 
     private void broadcastShot(int clientId, float x, float y, float dirX, float dirY) throws IOException {
-        String message = String.format("SHOOT|%d|%f|%f|%f|%f", clientId, x, y, dirX, dirY);
-        broadcast(message, null);
-    }
-
-    private void broadcastDeath(int clientId, int shooterId) throws IOException {
-        String message = String.format("DEATH|%d|%d", clientId, shooterId);
-        broadcast(message, null);
-    }
-
-    private void broadcastRespawn(int clientId, float x, float y) throws IOException {
-        String message = String.format("RESPAWN|%d|%f|%f", clientId, x, y);
-        broadcast(message, null);
+        writer.begin(Protocol.SHOOT)
+            .writeVarInt(clientId)
+            .writeFloat(x)
+            .writeFloat(y)
+            .writeFloat(dirX)
+            .writeFloat(dirY)
+            .writeVarInt(0); // bulletId, this server does not track bullets
+        broadcast(writer, null);
     }
 
-    private void broadcast(String message, String excludeKey) throws IOException {
-        byte[] data = message.getBytes();
+    private void broadcast(PacketWriter message, String excludeKey) throws IOException {
         for (Map.Entry<String, ConnectionInfo> entry : connections.entrySet()) {
             if (!entry.getKey().equals(excludeKey)) {
                 ConnectionInfo connection = entry.getValue();
@@ -195,8 +187,8 @@ public class GameServer {
         }
     }
 
-    private void send(String message, InetAddress address, int port) throws IOException {
-        byte[] data = message.getBytes();
+    private void send(PacketWriter message, InetAddress address, int port) throws IOException {
+        byte[] data = message.toByteArray();
         DatagramPacket packet = new DatagramPacket(data, data.length, address, port);
         socket.send(packet);
     }
@@ -0,0 +1,97 @@
+package com.example.protocol;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Puts FRAGMENT datagrams back together into the message they were cut from.
+ * A few messages can be in progress at once, each in a buffer that is
+ * allocated once and reused; one that is still incomplete after a timeout is
+ * dropped, as is the oldest when a new message needs its slot. Not thread
+ * safe, only the receiving thread uses it.
+ */
+public final class FragmentAssembler {
+    private static final int SLOTS = 4;
+    private static final long TIMEOUT_NANOS = 1_000_000_000L;
+
+    private final Slot[] slots = new Slot[SLOTS];
+    private final PacketReader complete = new PacketReader();
+    private long expired;
+
+    private static final class Slot {
+        final byte[] data = new byte[Protocol.MAX_MESSAGE_SIZE];
+        boolean active;
+        int messageId;
+        int count;
+        int received; // Bit i set once fragment i is in
+        int length;
+        long startedAt;
+    }
+
+    public FragmentAssembler() {
+        for (int i = 0; i < SLOTS; i++) {
+            slots[i] = new Slot();
+        }
+    }
+
+    /**
+     * Adds one fragment, read from just after the FRAGMENT type. Returns a
+     * reader positioned on the whole message (type first, no version byte) once
+     * the last fragment is in, valid until the next call; otherwise null.
+     */
+    public PacketReader add(PacketReader fragment, long now) {
+        int messageId = fragment.readVarInt();
+        int index = fragment.readByte();
+        int count = fragment.readByte();
+        int size = fragment.remaining();
+        if (count == 0 || count > Protocol.MAX_FRAGMENTS || index >= count || size > Protocol.FRAGMENT_PAYLOAD) {
+            throw new IllegalArgumentException("Bad fragment");
+        }
+        Slot slot = find(messageId, count, now);
+        if ((slot.received & (1 << index)) != 0) return null; // Duplicate
+        fragment.readBytes(slot.data, index * Protocol.FRAGMENT_PAYLOAD);
+        slot.received |= 1 << index;
+        if (index == count - 1) {
+            slot.length = index * Protocol.FRAGMENT_PAYLOAD + size;
+        }
+        if (slot.received != (1 << count) - 1) return null;
+        slot.active = false;
+        return complete.wrap(ByteBuffer.wrap(slot.data, 0, slot.length));
+    }
+
+    /**
+     * Messages given up on because they were still incomplete.
+     */
+    public long getExpired() {
+        return expired;
+    }
+
+    private Slot find(int messageId, int count, long now) {
+        Slot free = null;
+        Slot oldest = null;
+        for (Slot slot : slots) {
+            if (slot.active && now - slot.startedAt > TIMEOUT_NANOS) {
+                slot.active = false;
+                expired++;
+            }
+            if (slot.active && slot.messageId == messageId && slot.count == count) {
+                return slot;
+            }
+            if (!slot.active) {
+                if (free == null) free = slot;
+            } else if (oldest == null || slot.startedAt - oldest.startedAt < 0) {
+                oldest = slot;
+            }
+        }
+        if (free == null) {
+            free = oldest;
+            expired++;
+        }
+        free.active = true;
+        free.messageId = messageId;
+        free.count = count;
+        free.received = 0;
+        free.length = 0;
+        free.startedAt = now;
+        return free;
+    }
+}
@@ -0,0 +1,119 @@
+package com.example.protocol;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Reads fields out of a received datagram. A truncated or malformed packet
+ * surfaces as a {@link BufferUnderflowException} or {@link IllegalArgumentException},
+ * which callers treat as a dropped packet.
+ */
+public final class PacketReader {
+    private ByteBuffer buffer;
+
+    public PacketReader() {}
+
+    public PacketReader(ByteBuffer buffer) {
+        this.buffer = buffer;
+    }
+
+    public PacketReader wrap(ByteBuffer buffer) {
+        this.buffer = buffer;
+        return this;
+    }
+
+    /**
+     * Consumes the header and returns the message type.
+     */
+    public byte readHeader() {
+        byte version = buffer.get();
+        if (version != Protocol.VERSION) {
+            throw new IllegalArgumentException("Unsupported protocol version " + version);
+        }
+        return buffer.get();
+    }
+
+    /**
+     * Reads the type byte of a message nested in a BATCH.
+     */
+    public byte readType() {
+        return buffer.get();
+    }
+
+    /**
+     * Returns a reader over the next length bytes and skips past them.
+     */
+    public PacketReader readSlice(int length) {
+        if (length > buffer.remaining()) {
+            throw new BufferUnderflowException();
+        }
+        PacketReader slice = new PacketReader(buffer.slice(buffer.position(), length));
+        buffer.position(buffer.position() + length);
+        return slice;
+    }
+
+    public int readByte() {
+        return buffer.get() & 0xFF;
+    }
+
+    public boolean readBoolean() {
+        return buffer.get() != 0;
+    }
+
+    public int readVarInt() {
+        int value = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            byte b = buffer.get();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("VarInt too long");
+    }
+
+    public long readLong() {
+        return buffer.getLong();
+    }
+
+    public float readFloat() {
+        return buffer.getFloat();
+    }
+
+    public String readString() {
+        int length = readVarInt();
+        if (length == 0) return "";
+        if (length > buffer.remaining()) {
+            throw new BufferUnderflowException();
+        }
+        if (!buffer.hasArray()) {
+            byte[] bytes = new byte[length];
+            buffer.get(bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+        String value = new String(buffer.array(), buffer.arrayOffset() + buffer.position(), length, StandardCharsets.UTF_8);
+        buffer.position(buffer.position() + length);
+        return value;
+    }
+
+    /**
+     * Copies everything left to read into the array at the given offset.
+     */
+    public void readBytes(byte[] destination, int offset) {
+        buffer.get(destination, offset, buffer.remaining());
+    }
+
+    /**
+     * Copies out everything left to read.
+     */
+    public byte[] readRemaining() {
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.get(bytes);
+        return bytes;
+    }
+
+    public int remaining() {
+        return buffer.remaining();
+    }
+}
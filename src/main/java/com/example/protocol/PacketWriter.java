@@ -0,0 +1,90 @@
+package com.example.protocol;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Builds a single datagram into a reusable buffer. Not thread safe, so each
+ * sending thread keeps its own writer.
+ */
+public final class PacketWriter {
+    private final ByteBuffer buffer;
+    // Handed out by toBuffer(), reused so finishing a packet does not allocate
+    private final ByteBuffer view;
+
+    public PacketWriter() {
+        this(Protocol.MAX_PACKET_SIZE);
+    }
+
+    public PacketWriter(int capacity) {
+        this.buffer = ByteBuffer.allocate(capacity);
+        this.view = buffer.asReadOnlyBuffer();
+    }
+
+    public PacketWriter begin(byte type) {
+        buffer.clear();
+        buffer.put(Protocol.VERSION);
+        buffer.put(type);
+        return this;
+    }
+
+    public PacketWriter writeByte(int value) {
+        buffer.put((byte) value);
+        return this;
+    }
+
+    public PacketWriter writeBoolean(boolean value) {
+        buffer.put(value ? (byte) 1 : (byte) 0);
+        return this;
+    }
+
+    public PacketWriter writeVarInt(int value) {
+        while ((value & ~0x7F) != 0) {
+            buffer.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte) value);
+        return this;
+    }
+
+    public PacketWriter writeLong(long value) {
+        buffer.putLong(value);
+        return this;
+    }
+
+    public PacketWriter writeFloat(float value) {
+        buffer.putFloat(value);
+        return this;
+    }
+
+    public PacketWriter writeString(String value) {
+        if (value == null || value.isEmpty()) {
+            return writeVarInt(0);
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        writeVarInt(bytes.length);
+        buffer.put(bytes);
+        return this;
+    }
+
+    public int size() {
+        return buffer.position();
+    }
+
+    /**
+     * Returns a read-only view of the finished packet. The view shares the
+     * writer's storage and is the same object on every call, so it is only valid
+     * until the next call to begin() or toBuffer().
+     */
+    public ByteBuffer toBuffer() {
+        view.clear();
+        view.limit(buffer.position());
+        return view;
+    }
+
+    public byte[] toByteArray() {
+        byte[] bytes = new byte[buffer.position()];
+        System.arraycopy(buffer.array(), 0, bytes, 0, bytes.length);
+        return bytes;
+    }
+}
@@ -0,0 +1,109 @@
+package com.example.protocol;
+
+/**
+ * Wire format shared by the client and both servers.
+ *
+ * Every datagram starts with a one byte protocol version followed by a one byte
+ * message type. Client packets then carry the varint id of the room they are
+ * addressed to, so one server port can host many matches. Fields follow in the
+ * order listed below. Floats are 4 byte big-endian IEEE 754, longs are 8 byte
+ * big-endian, ints are unsigned LEB128 varints and strings are a varint byte
+ * length followed by UTF-8 bytes.
+ *
+ * Player ids are varint handles handed out by the server at join: a 16 bit
+ * slot in the low bits and the slot's generation above it. 0 is never a valid
+ * handle. Display names are sent once per player in a NAME message.
+ *
+ * Players name themselves in their JOIN, and that name is also who their career
+ * on the server's leaderboard belongs to, so it carries over to later sessions.
+ * A player who sends no name joins as a guest under a made-up one and keeps no
+ * career.
+ *
+ * Joining also hands the client a random session token. If the client's
+ * address changes (a NAT rebinding, a short outage) it presents the token from
+ * the new address and keeps its handle, score and place in the match.
+ *
+ * Events a client must not miss (joins, names, hits, deaths, respawns,
+ * disconnects, scores, the end of a match, sessions) are sent wrapped in
+ * RELIABLE entries. The client delivers those in sequence order and
+ * acknowledges them with its snapshot acks, and the server resends them until
+ * it does. Positions are sequenced instead: a late one is dropped rather than
+ * applied over a newer one.
+ */
+public final class Protocol {
+    public static final byte VERSION = 10;
+    public static final int MAX_PACKET_SIZE = 1024;
+    // A message too big for one datagram goes out in up to MAX_FRAGMENTS pieces
+    public static final int MAX_FRAGMENTS = 16;
+    public static final int FRAGMENT_PAYLOAD = MAX_PACKET_SIZE - 16;
+    // Largest message once reassembled, without its version byte
+    public static final int MAX_MESSAGE_SIZE = MAX_FRAGMENTS * FRAGMENT_PAYLOAD;
+    // The server sends every client something at least this often, an unchanged
+    // snapshot if nothing else, so a client only goes unheard from when it is lost
+    public static final int KEEPALIVE_MILLIS = 200;
+    // Reliable messages the client holds ahead of a gap, the bits of one int ack mask.
+    // The server never has more than this in flight.
+    public static final int RELIABLE_WINDOW = 32;
+
+    // Client -> server: name (empty to join as a guest)
+    // Server -> client: playerId, x, y
+    public static final byte JOIN = 1;
+    // Client -> server: playerId, x, y, sequence (only newer ones are applied)
+    // Server -> client: playerId, x, y (dropped if its batch is older than one already seen)
+    public static final byte POS = 2;
+    // Client -> server: x, y, dirX, dirY
+    // Server -> client: playerId, x, y, dirX, dirY, bulletId
+    public static final byte SHOOT = 3;
+    // Server -> client: playerId, killerId
+    public static final byte DEATH = 4;
+    // Client -> server: (empty)
+    // Server -> client: playerId
+    public static final byte DISCONNECT = 5;
+    // 6 was DAMAGE, from when clients reported their own hits. Not to be reused.
+    // Server -> client: playerId, x, y, after the server's respawn delay
+    public static final byte RESPAWN = 7;
+    // Server -> client: delta-compressed player state, see SnapshotCodec
+    public static final byte SNAPSHOT = 8;
+    // Client -> server: sequence of the newest snapshot applied, then for the reliable
+    //                   channel: the newest sequence delivered in order (ack), and a
+    //                   mask with bit i set if ack + 1 + i has arrived ahead of it
+    public static final byte SNAPSHOT_ACK = 9;
+    // Server -> client: count, per player in rank order: playerId, score, hasWinner, [winnerId]
+    public static final byte SCORES = 10;
+    // Server -> client: winnerId
+    public static final byte GAME_OVER = 11;
+    // Server -> client: (empty)
+    public static final byte SHUTDOWN = 12;
+    // Server -> client: playerId, x, y, dirX, dirY, health, isDead
+    public static final byte CLIENT = 13;
+    // Server -> client: playerId, x, y, isDead
+    public static final byte ENTER_VIEW = 14;
+    // Server -> client: playerId
+    public static final byte LEAVE_VIEW = 15;
+    // Server -> client: victimId, shooterId, bulletId, remaining health
+    public static final byte HIT = 16;
+    // Server -> client: datagram sequence, then repeated until the end of the datagram:
+    //                   length, then a message without its version byte (type, fields)
+    public static final byte BATCH = 17;
+    // Server -> client: playerId, name
+    public static final byte NAME = 18;
+    // Server -> client: count, per player whose score changed: playerId, score, hasWinner, [winnerId]
+    //                   Merged into the last SCORES table, which is resent whenever a player leaves
+    public static final byte SCORE_UPDATE = 19;
+    // Client -> server: token, moves that session to the sender's address
+    // Server -> client: token, right after JOIN and in answer to a resume, then
+    //                   everyone's NAME, the player's CLIENT state and SCORES.
+    //                   A token of 0 means the session is gone and the client has to JOIN.
+    public static final byte SESSION = 20;
+    // Server -> client, inside a BATCH: sequence, then a message without its version byte.
+    //                   Sequences start at 1 and count up by one per message. One too big
+    //                   for a datagram is sent as a whole RELIABLE message in FRAGMENTs.
+    public static final byte RELIABLE = 21;
+    // Server -> client: messageId, index (byte), count (byte), then that slice of a message
+    //                   without its version byte. Every slice but the last is FRAGMENT_PAYLOAD
+    //                   bytes; the client reassembles the message and drops it if a slice
+    //                   is still missing after a second.
+    public static final byte FRAGMENT = 22;
+
+    private Protocol() {}
+}
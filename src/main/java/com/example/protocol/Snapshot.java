@@ -0,0 +1,47 @@
+package com.example.protocol;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Immutable view of every player's replicated state at one server tick, keyed
+ * by player handle.
+ * Snapshots are shared between the per-client histories, so they are never
+ * modified after construction.
+ */
+public final class Snapshot {
+    public static final Snapshot EMPTY = new Snapshot(0, Collections.emptyMap());
+
+    private final int sequence;
+    private final Map<Integer, Entry> entries;
+
+    public static final class Entry {
+        public final float x;
+        public final float y;
+        public final boolean isDead;
+
+        public Entry(float x, float y, boolean isDead) {
+            this.x = x;
+            this.y = y;
+            this.isDead = isDead;
+        }
+    }
+
+    public Snapshot(int sequence, Map<Integer, Entry> entries) {
+        this.sequence = sequence;
+        this.entries = Collections.unmodifiableMap(new LinkedHashMap<>(entries));
+    }
+
+    public int getSequence() {
+        return sequence;
+    }
+
+    public Map<Integer, Entry> getEntries() {
+        return entries;
+    }
+
+    public Entry get(int playerId) {
+        return entries.get(playerId);
+    }
+}
@@ -0,0 +1,118 @@
+package com.example.protocol;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Encodes a snapshot as a delta against a baseline the receiver already has.
+ *
+ * SNAPSHOT layout: sequence, baseSequence (0 for a keyframe), changedCount,
+ * per changed player: playerId, fieldMask, [x], [y], [isDead],
+ * removedCount, per removed player: playerId.
+ */
+public final class SnapshotCodec {
+    private static final int FIELD_X = 1;
+    private static final int FIELD_Y = 2;
+    private static final int FIELD_DEAD = 4;
+    private static final int ALL_FIELDS = FIELD_X | FIELD_Y | FIELD_DEAD;
+
+    private SnapshotCodec() {}
+
+    /**
+     * Writes a SNAPSHOT packet for current relative to base. Pass a null base to
+     * write a keyframe. Returns false without touching the writer when base is
+     * non-null and nothing changed, so the caller can skip sending entirely.
+     */
+    public static boolean write(PacketWriter out, Snapshot base, Snapshot current) {
+        return write(out, base, current, false);
+    }
+
+    /**
+     * Like {@link #write(PacketWriter, Snapshot, Snapshot)}, but with always set
+     * an unchanged snapshot is still written, as an empty delta.
+     */
+    public static boolean write(PacketWriter out, Snapshot base, Snapshot current, boolean always) {
+        Snapshot baseline = base != null ? base : Snapshot.EMPTY;
+
+        int changed = 0;
+        for (Map.Entry<Integer, Snapshot.Entry> entry : current.getEntries().entrySet()) {
+            if (fieldMask(baseline.get(entry.getKey()), entry.getValue()) != 0) {
+                changed++;
+            }
+        }
+        int removed = 0;
+        for (int playerId : baseline.getEntries().keySet()) {
+            if (current.get(playerId) == null) {
+                removed++;
+            }
+        }
+        if (base != null && changed == 0 && removed == 0 && !always) {
+            return false;
+        }
+
+        out.begin(Protocol.SNAPSHOT)
+           .writeVarInt(current.getSequence())
+           .writeVarInt(base != null ? base.getSequence() : 0)
+           .writeVarInt(changed);
+        for (Map.Entry<Integer, Snapshot.Entry> entry : current.getEntries().entrySet()) {
+            Snapshot.Entry state = entry.getValue();
+            int mask = fieldMask(baseline.get(entry.getKey()), state);
+            if (mask == 0) continue;
+            out.writeVarInt(entry.getKey()).writeByte(mask);
+            if ((mask & FIELD_X) != 0) out.writeFloat(state.x);
+            if ((mask & FIELD_Y) != 0) out.writeFloat(state.y);
+            if ((mask & FIELD_DEAD) != 0) out.writeBoolean(state.isDead);
+        }
+        out.writeVarInt(removed);
+        for (int playerId : baseline.getEntries().keySet()) {
+            if (current.get(playerId) == null) {
+                out.writeVarInt(playerId);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Reads the sequence and baseline fields of a SNAPSHOT packet and rebuilds
+     * the full snapshot from the matching entry in history. Returns null when the
+     * baseline is no longer available; the server falls back to a keyframe once
+     * it stops receiving acks.
+     */
+    public static Snapshot read(PacketReader in, SnapshotHistory history) {
+        int sequence = in.readVarInt();
+        int baseSequence = in.readVarInt();
+        Snapshot base = baseSequence == 0 ? Snapshot.EMPTY : history.get(baseSequence);
+        if (base == null) {
+            return null;
+        }
+
+        Map<Integer, Snapshot.Entry> entries = new LinkedHashMap<>(base.getEntries());
+        int changed = in.readVarInt();
+        for (int i = 0; i < changed; i++) {
+            int playerId = in.readVarInt();
+            int mask = in.readByte();
+            Snapshot.Entry previous = entries.get(playerId);
+            float x = (mask & FIELD_X) != 0 ? in.readFloat() : previous.x;
+            float y = (mask & FIELD_Y) != 0 ? in.readFloat() : previous.y;
+            boolean isDead = (mask & FIELD_DEAD) != 0 ? in.readBoolean() : previous.isDead;
+            entries.put(playerId, new Snapshot.Entry(x, y, isDead));
+        }
+        int removed = in.readVarInt();
+        for (int i = 0; i < removed; i++) {
+            entries.remove(in.readVarInt());
+        }
+
+        Snapshot snapshot = new Snapshot(sequence, entries);
+        history.put(snapshot);
+        return snapshot;
+    }
+
+    private static int fieldMask(Snapshot.Entry previous, Snapshot.Entry current) {
+        if (previous == null) return ALL_FIELDS;
+        int mask = 0;
+        if (Float.compare(previous.x, current.x) != 0) mask |= FIELD_X;
+        if (Float.compare(previous.y, current.y) != 0) mask |= FIELD_Y;
+        if (previous.isDead != current.isDead) mask |= FIELD_DEAD;
+        return mask;
+    }
+}
@@ -0,0 +1,31 @@
+package com.example.protocol;
+
+import java.util.Arrays;
+
+/**
+ * Fixed-size ring of the most recent snapshots, indexed by sequence number.
+ * The server keeps one per client to find the baseline that client last
+ * acknowledged, and the client keeps one to rebuild deltas against it.
+ */
+public final class SnapshotHistory {
+    public static final int SIZE = 32;
+
+    private final Snapshot[] ring = new Snapshot[SIZE];
+
+    public void put(Snapshot snapshot) {
+        ring[snapshot.getSequence() & (SIZE - 1)] = snapshot;
+    }
+
+    /**
+     * Returns the snapshot with the given sequence, or null if it was never
+     * stored or has already been overwritten by a newer one.
+     */
+    public Snapshot get(int sequence) {
+        Snapshot snapshot = ring[sequence & (SIZE - 1)];
+        return snapshot != null && snapshot.getSequence() == sequence ? snapshot : null;
+    }
+
+    public void clear() {
+        Arrays.fill(ring, null);
+    }
+}
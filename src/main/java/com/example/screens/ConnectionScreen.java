@@ -1,6 +1,7 @@
 package com.example.screens;
 
 import com.badlogic.gdx.Gdx;
+import com.badlogic.gdx.Preferences;
 import com.badlogic.gdx.Screen;
 import com.badlogic.gdx.graphics.GL20;
 import com.badlogic.gdx.graphics.Pixmap;
@@ -13,6 +14,7 @@ import com.badlogic.gdx.utils.viewport.ScreenViewport;
 import com.example.MyGame;
 
 public class ConnectionScreen implements Screen {
+    private static final int MAX_NAME_LENGTH = 16;
     private final MyGame game;
     private final Stage stage;
     private final Skin skin;
@@ -65,12 +67,24 @@ public class ConnectionScreen implements Screen {
         table.setFillParent(true);
         stage.addActor(table);
         
+        // The name is remembered, the server keeps career scores by name
+        Preferences preferences = Gdx.app.getPreferences("just-vibes");
+        String savedName = preferences.getString("playerName", "");
+        if (savedName.isEmpty()) {
+            savedName = "Player" + (1000 + (int) (Math.random() * 9000));
+        }
+
         Label titleLabel = new Label("Enter Server IP Address", skin);
         TextField ipInput = new TextField("127.0.0.1", skin);
+        Label nameLabel = new Label("Your Name", skin);
+        TextField nameInput = new TextField(savedName, skin);
+        nameInput.setMaxLength(MAX_NAME_LENGTH);
         TextButton connectButton = new TextButton("Connect", skin);
         
         table.add(titleLabel).padBottom(20).row();
         table.add(ipInput).width(200).padBottom(20).row();
+        table.add(nameLabel).padBottom(20).row();
+        table.add(nameInput).width(200).padBottom(20).row();
         table.add(connectButton).width(150).row();
         
         // Handle connect button click
@@ -81,7 +95,12 @@ public class ConnectionScreen implements Screen {
                 if (serverIp.isEmpty()) {
                     serverIp = "127.0.0.1";
                 }
-                game.startGame(serverIp);
+                String playerName = nameInput.getText().trim();
+                if (!playerName.isEmpty()) {
+                    preferences.putString("playerName", playerName);
+                    preferences.flush();
+                }
+                game.startGame(serverIp, playerName);
             }
         });
     }
@@ -16,14 +16,17 @@ import com.example.entities.Bullet;
 import com.example.network.GameClient;
 import com.example.map.CityBackground;
 import com.example.game.GameScreen;
+import com.example.protocol.Protocol;
 
 import java.io.IOException;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Queue;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.Iterator;
-import org.json.JSONObject;
 import java.util.HashSet;
 import java.util.Set;
 
@@ -32,24 +35,24 @@ public class MainGameScreen implements Screen {
     private final OrthographicCamera camera;
     private final ShapeRenderer shapeRenderer;
     private final GameClient client;
-    private final Map<String, Player> players = new ConcurrentHashMap<>();
+    private final Map<Integer, Player> players = new ConcurrentHashMap<>();
     private final List<Bullet> bullets = new ArrayList<>();
     private final CityBackground cityBackground;
     private GameScreen gameScreen;
     private Player localPlayer;
-    private String localPlayerId;
+    private int localPlayerId; // 0 until the server assigns a handle
     private float shootCooldown = 0;
-    private float respawnCooldown = 0;
     private static final float SHOOT_DELAY = 0.5f;
-    private static final float RESPAWN_DELAY = 3.0f;
-    private static final int BULLET_DAMAGE = 20;
     private boolean isConnected = false;
     private float connectionTimeout = 5.0f;
-    private final Map<String, String> bulletOwners = new ConcurrentHashMap<>();
+    // Bullets the server has announced, so HIT messages can remove them
+    private final Map<Integer, Bullet> bulletsById = new HashMap<>();
+    // Locally fired bullets waiting for the server's echo to learn their id
+    private final Queue<Bullet> unconfirmedBullets = new ArrayDeque<>();
     private float playerUpdateTimer = 0;
     private static final float PLAYER_UPDATE_INTERVAL = 0.1f; // 10 times per second
 
-    public MainGameScreen(MyGame game, String serverIp) {
+    public MainGameScreen(MyGame game, String serverIp, String playerName) {
         this.game = game;
         this.camera = new OrthographicCamera();
         camera.setToOrtho(false, 800, 600);
@@ -62,21 +65,20 @@ public class MainGameScreen implements Screen {
                 Gdx.app.postRunnable(() -> game.exit());
             });
             setupNetworkHandlers();
-            this.gameScreen = new GameScreen(game, "Waiting for ID...", client);
-            client.sendJoin();
+            this.gameScreen = new GameScreen(game, client);
+            client.sendJoin(playerName);
         } catch (IOException e) {
             throw new RuntimeException("Failed to initialize network client", e);
         }
     }
 
     private void setupNetworkHandlers() {
-        client.registerPosHandler(parts -> {
-            if (parts.length < 4) return;
-            String playerId = parts[1];
-            float worldX = Float.parseFloat(parts[2]);
-            float worldY = Float.parseFloat(parts[3]);
+        client.registerPosHandler(message -> {
+            int playerId = message.readVarInt();
+            float worldX = message.readFloat();
+            float worldY = message.readFloat();
             
-            if (!playerId.equals(localPlayerId)) {
+            if (playerId != localPlayerId) {
                 Gdx.app.postRunnable(() -> {
                     Player player = players.get(playerId);
                     if (player != null && !player.isLocal()) {
@@ -87,173 +89,136 @@ public class MainGameScreen implements Screen {
             }
         });
 
-        client.registerHandler("JOIN", parts -> {
-            if (parts.length < 4) return;
-            String playerId = parts[1];
-            float worldX = Float.parseFloat(parts[2]);
-            float worldY = Float.parseFloat(parts[3]);
+        client.registerHandler(Protocol.JOIN, message -> {
+            int playerId = message.readVarInt();
+            float worldX = message.readFloat();
+            float worldY = message.readFloat();
             
             Gdx.app.postRunnable(() -> {
                 if (localPlayer == null && !isConnected) {
                     localPlayerId = playerId;
                     localPlayer = new Player(playerId, worldX, worldY, true);
                     players.put(playerId, localPlayer);
+                    gameScreen.setLocalPlayerId(playerId);
                     isConnected = true;
-                } else if (!playerId.equals(localPlayerId)) {
+                } else if (playerId != localPlayerId) {
                     Player player = new Player(playerId, worldX, worldY, false);
                     players.put(playerId, player);
                 }
             });
         });
 
-        client.registerSyncHandler(parts -> {
-            if (parts.length < 2) {
-                System.out.println("[Client] Received invalid sync message: too few parts");
-                return;
-            }
-            
-            System.out.println("[Client] Received sync message with " + (parts.length - 1) + " player updates");
-            System.out.println("[Client] Local player ID: " + localPlayerId);
-            System.out.println("[Client] Current players before sync: " + String.join(", ", players.keySet()));
-            
-            Set<String> currentPlayers = new HashSet<>(players.keySet());
-            
-            for (int i = 1; i < parts.length; i++) {
-                String[] playerData = parts[i].split(",");
-                if (playerData.length < 4) {
-                    System.out.println("[Client] Invalid player data at index " + i + ": " + String.join(",", playerData));
-                    continue;
-                }
-                
-                String playerId = playerData[0];
-                float worldX = Float.parseFloat(playerData[1]);
-                float worldY = Float.parseFloat(playerData[2]);
-                boolean isDead = playerData[3].equals("1");
-                
-                System.out.println("[Client] Processing player in sync: " + playerId + " at (" + worldX + ", " + worldY + ") dead: " + isDead);
-                
-                currentPlayers.remove(playerId);
-                
-                Gdx.app.postRunnable(() -> {
+        client.registerSnapshotHandler(snapshot -> {
+            Gdx.app.postRunnable(() -> {
+                snapshot.getEntries().forEach((playerId, state) -> {
                     Player player = players.get(playerId);
                     if (player == null) {
                         // Create new player if they don't exist
-                        boolean isLocal = playerId.equals(localPlayerId);
-                        player = new Player(playerId, worldX, worldY, isLocal);
+                        boolean isLocal = playerId == localPlayerId;
+                        player = new Player(playerId, state.x, state.y, isLocal);
                         players.put(playerId, player);
-                        System.out.println("[Client] Created new player from sync: " + playerId);
-                    } else {
-                        // Update position for all players, including local player
-                        player.setWorldPosition(worldX, worldY);
-                        System.out.println("[Client] Updated " + (player.isLocal() ? "local" : "remote") + 
-                                         " player from sync: " + playerId);
+                    } else if (!player.isLocal()) {
+                        // The local player is driven by input, remote ones by the server
+                        player.setWorldPosition(state.x, state.y);
+                    }
+                    if (state.isDead) {
+                        player.setDead(true);
+                    } else if (player.isDead() && !player.isLocal()) {
+                        // Covers a RESPAWN that was lost on the way
+                        player.respawn(state.x, state.y);
                     }
-                    player.setDead(isDead);
                 });
-            }
-            
-            System.out.println("[Client] Players to remove: " + String.join(", ", currentPlayers));
-            currentPlayers.forEach(playerId -> {
-                if (!playerId.equals(localPlayerId)) {
-                    System.out.println("[Client] Removing player not in sync: " + playerId);
-                    Gdx.app.postRunnable(() -> players.remove(playerId));
-                }
-            });
-            
-            System.out.println("[Client] Current players after sync: " + String.join(", ", players.keySet()));
-        });
 
-        client.registerJsonHandler("FULL_STATE", jsonMessage -> {
-            Gdx.app.postRunnable(() -> {
-                try {
-                    // Handle player states
-                    JSONObject playersState = jsonMessage.getJSONObject("players");
-                    playersState.keys().forEachRemaining(playerId -> {
-                        if (!playerId.equals(localPlayerId)) {
-                            JSONObject playerState = playersState.getJSONObject(playerId);
-                            float x = (float)playerState.getDouble("x");
-                            float y = (float)playerState.getDouble("y");
-                            
-                            Player player = players.get(playerId);
-                            if (player == null) {
-                                player = new Player(playerId, x, y, false);
-                                players.put(playerId, player);
-                            } else {
-                                player.setWorldPosition(x, y);
-                            }
-                        }
-                    });
-                    
-                    // Handle bullet states
-                    bullets.clear(); // Clear existing bullets
-                    JSONObject bulletsState = jsonMessage.getJSONObject("bullets");
-                    bulletsState.keys().forEachRemaining(bulletId -> {
-                        JSONObject bulletState = bulletsState.getJSONObject(bulletId);
-                        String ownerId = bulletState.getString("ownerId");
-                        Player owner = players.get(ownerId);
-                        if (owner != null) {
-                            Vector2 ownerPos = owner.getPosition();
-                            Vector2 ownerDir = owner.getDirection();
-                            Bullet bullet = new Bullet(ownerId, ownerPos.x, ownerPos.y, ownerDir.x, ownerDir.y);
-                            bullets.add(bullet);
-                            bulletOwners.put(bulletId, ownerId);
-                        }
-                    });
-                } catch (Exception e) {
-                    Gdx.app.error("MainGameScreen", "Error processing full state update", e);
-                }
+                // Anyone missing from the snapshot has left the game
+                Set<Integer> missingPlayers = new HashSet<>(players.keySet());
+                missingPlayers.removeAll(snapshot.getEntries().keySet());
+                missingPlayers.forEach(playerId -> {
+                    if (playerId != localPlayerId) {
+                        players.remove(playerId);
+                    }
+                });
             });
         });
 
-        client.registerHandler("CLIENT", parts -> {
-            if (parts.length < 8) return;
-            String playerId = parts[1];
-            float x = Float.parseFloat(parts[2]);
-            float y = Float.parseFloat(parts[3]);
-            float dirX = Float.parseFloat(parts[4]);
-            float dirY = Float.parseFloat(parts[5]);
-            int health = Integer.parseInt(parts[6]);
-            boolean isDead = Boolean.parseBoolean(parts[7]);
+        client.registerHandler(Protocol.CLIENT, message -> {
+            int playerId = message.readVarInt();
+            float x = message.readFloat();
+            float y = message.readFloat();
+            float dirX = message.readFloat();
+            float dirY = message.readFloat();
+            int health = message.readVarInt();
+            boolean isDead = message.readBoolean();
             
             Gdx.app.postRunnable(() -> {
-                if (!playerId.equals(localPlayerId)) {
+                if (playerId != localPlayerId) {
                     Player player = players.get(playerId);
                     if (player == null) {
                         player = new Player(playerId, x, y, false);
                         players.put(playerId, player);
                     }
                     updatePlayerState(player, x, y, dirX, dirY, health, isDead);
+                } else if (localPlayer != null) {
+                    // Only sent about us when a session resumes: catch up on what we missed
+                    localPlayer.setHealth(health);
+                    if (isDead) {
+                        localPlayer.setDead(true);
+                    } else if (localPlayer.isDead()) {
+                        Vector2 screenPos = getScreenCoordinates(new Vector2(x, y));
+                        localPlayer.respawn(screenPos.x, screenPos.y);
+                    }
                 }
             });
         });
 
-        client.registerHandler("SHOOT", parts -> {
-            if (parts.length < 7) return;
-            String playerId = parts[1];
-            float worldX = Float.parseFloat(parts[2]);
-            float worldY = Float.parseFloat(parts[3]);
-            float dirX = Float.parseFloat(parts[4]);
-            float dirY = Float.parseFloat(parts[5]);
-            String bulletId = parts[6];
+        client.registerHandler(Protocol.SHOOT, message -> {
+            int playerId = message.readVarInt();
+            float worldX = message.readFloat();
+            float worldY = message.readFloat();
+            float dirX = message.readFloat();
+            float dirY = message.readFloat();
+            int bulletId = message.readVarInt();
             
-            if (!playerId.equals(localPlayerId)) {
-                Gdx.app.postRunnable(() -> {
-                    Player shooter = players.get(playerId);
-                    if (shooter != null) {
-                        shooter.setWorldPosition(worldX, worldY);
-                        shooter.setDirection(dirX, dirY);
-                        // Create bullet in world coordinates
-                        Bullet bullet = new Bullet(playerId, worldX, worldY, dirX, dirY);
-                        bullets.add(bullet);
-                        bulletOwners.put(bulletId, playerId);
+            Gdx.app.postRunnable(() -> {
+                if (playerId == localPlayerId) {
+                    // Our own shot was already drawn when we fired it, just learn its id
+                    Bullet bullet = unconfirmedBullets.poll();
+                    if (bullet != null) {
+                        bulletsById.put(bulletId, bullet);
                     }
-                });
-            }
+                    return;
+                }
+                Player shooter = players.get(playerId);
+                if (shooter != null) {
+                    shooter.setWorldPosition(worldX, worldY);
+                    shooter.setDirection(dirX, dirY);
+                    // Create bullet in world coordinates
+                    Bullet bullet = new Bullet(playerId, worldX, worldY, dirX, dirY);
+                    bullets.add(bullet);
+                    bulletsById.put(bulletId, bullet);
+                }
+            });
         });
 
-        client.registerHandler("DEATH", parts -> {
-            if (parts.length < 3) return;
-            String playerId = parts[1];
+        client.registerHandler(Protocol.HIT, message -> {
+            int victimId = message.readVarInt();
+            message.readVarInt(); // shooterId
+            int bulletId = message.readVarInt();
+            int health = message.readVarInt();
+
+            Gdx.app.postRunnable(() -> {
+                Bullet bullet = bulletsById.remove(bulletId);
+                if (bullet != null) {
+                    bullet.active = false;
+                }
+                Player victim = players.get(victimId);
+                if (victim != null) {
+                    victim.setHealth(health);
+                }
+            });
+        });
+
+        client.registerHandler(Protocol.DEATH, message -> {
+            int playerId = message.readVarInt();
             
             Gdx.app.postRunnable(() -> {
                 Player player = players.get(playerId);
@@ -263,11 +228,10 @@ public class MainGameScreen implements Screen {
             });
         });
 
-        client.registerHandler("RESPAWN", parts -> {
-            if (parts.length < 4) return;
-            String playerId = parts[1];
-            float worldX = Float.parseFloat(parts[2]);
-            float worldY = Float.parseFloat(parts[3]);
+        client.registerHandler(Protocol.RESPAWN, message -> {
+            int playerId = message.readVarInt();
+            float worldX = message.readFloat();
+            float worldY = message.readFloat();
             
             Gdx.app.postRunnable(() -> {
                 Player player = players.get(playerId);
@@ -278,12 +242,40 @@ public class MainGameScreen implements Screen {
             });
         });
 
-        client.registerHandler("DISCONNECT", parts -> {
-            if (parts.length < 2) return;
-            String playerId = parts[1];
+        client.registerHandler(Protocol.ENTER_VIEW, message -> {
+            int playerId = message.readVarInt();
+            float worldX = message.readFloat();
+            float worldY = message.readFloat();
+            boolean isDead = message.readBoolean();
+
+            Gdx.app.postRunnable(() -> {
+                if (playerId == localPlayerId) return;
+                Player player = players.get(playerId);
+                if (player == null) {
+                    player = new Player(playerId, worldX, worldY, false);
+                    players.put(playerId, player);
+                } else {
+                    player.setWorldPosition(worldX, worldY);
+                }
+                player.setDead(isDead);
+            });
+        });
+
+        client.registerHandler(Protocol.LEAVE_VIEW, message -> {
+            int playerId = message.readVarInt();
+
+            Gdx.app.postRunnable(() -> {
+                if (playerId != localPlayerId) {
+                    players.remove(playerId);
+                }
+            });
+        });
+
+        client.registerHandler(Protocol.DISCONNECT, message -> {
+            int playerId = message.readVarInt();
             
             Gdx.app.postRunnable(() -> {
-                if (!playerId.equals(localPlayerId)) {
+                if (playerId != localPlayerId) {
                     players.remove(playerId);
                 }
             });
@@ -396,6 +388,7 @@ public class MainGameScreen implements Screen {
             
             Bullet bullet = new Bullet(localPlayerId, playerPos.x, playerPos.y, dirX, dirY);
             bullets.add(bullet);
+            unconfirmedBullets.add(bullet);
             
             try {
                 client.sendShoot(playerPos.x, playerPos.y, dirX, dirY);
@@ -458,6 +451,7 @@ public class MainGameScreen implements Screen {
     private void updateBullets(float delta) {
         if (bullets.isEmpty()) return;
         
+        // Hits are decided by the server, bullets here are only drawn until it reports one
         Iterator<Bullet> bulletIterator = bullets.iterator();
         while (bulletIterator.hasNext()) {
             Bullet bullet = bulletIterator.next();
@@ -468,46 +462,14 @@ public class MainGameScreen implements Screen {
             
             bullet.update(delta);
 
-            // Check for bullet collisions with players
-            for (Player player : players.values()) {
-                if (!player.isDead() && bullet.checkCollision(player)) {
-                    // Apply damage to the hit player
-                    player.setHealth(player.getHealth() - BULLET_DAMAGE);
-                    
-                    // Send damage message to server
-                    String bulletId = bullet.getOwnerId() + "_" + System.currentTimeMillis();
-                    try {
-                        client.sendDamage(bulletId, BULLET_DAMAGE);
-                        
-                        // If player died from this hit, send death message
-                        if (player.getHealth() <= 0) {
-                            if (player.isLocal()) {
-                                client.sendDeath();
-                                respawnCooldown = RESPAWN_DELAY;
-                            }
-                            player.setDead(true);
-                        }
-                    } catch (IOException e) {
-                        Gdx.app.error("MainGameScreen", "Failed to send damage/death", e);
-                    }
-                    
-                    // Remove the bullet
-                    bulletIterator.remove();
-                    break;
-                }
-            }
-
-            // Remove bullets that are out of bounds
-            if (bullet.isOutOfBounds(800, 600)) {
+            // Remove bullets that hit someone or are out of bounds
+            if (!bullet.active || bullet.isOutOfBounds(800, 600)) {
                 bulletIterator.remove();
+                bulletsById.values().remove(bullet);
             }
         }
     }
 
-    private void checkCollisions() {
-        // Remove this method as collision handling is now in updateBullets
-    }
-
     private void updatePlayers(float delta) {
         if (localPlayer != null && !localPlayer.isDead()) {
             playerUpdateTimer += delta;
@@ -527,22 +489,6 @@ public class MainGameScreen implements Screen {
                 player.update(delta, 0, 0);
             }
         }
-        
-        updateRespawnTimer(delta);
-    }
-
-    private void updateRespawnTimer(float delta) {
-        if (localPlayer != null && localPlayer.isDead()) {
-            respawnCooldown -= delta;
-            if (respawnCooldown <= 0) {
-                try {
-                    client.sendRespawn();
-                    respawnCooldown = RESPAWN_DELAY;
-                } catch (IOException e) {
-                    Gdx.app.error("MainGameScreen", "Failed to send respawn", e);
-                }
-            }
-        }
     }
 
     private void checkMissingPlayers() {
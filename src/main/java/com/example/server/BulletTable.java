@@ -0,0 +1,103 @@
+package com.example.server;
+
+/**
+ * Fixed-capacity store for the bullets in flight in one room. Entries are
+ * pooled and kept densely packed, ids increase monotonically so they never
+ * collide within a room, and every bullet carries the tick it expires on so a
+ * miss is reclaimed even if it never leaves the map. Only the owning room's
+ * worker may modify the table.
+ */
+public class BulletTable {
+    private final BulletData[] bullets;
+    private final long lifetimeTicks;
+    private int size = 0;
+    private int nextId = 1;
+    private volatile int live = 0;
+    private volatile int peak = 0;
+
+    public static final class BulletData {
+        int id;
+        int ownerId;
+        float x, y;
+        float velocityX, velocityY;
+        long rewindNanos;
+        long expiryTick;
+    }
+
+    public BulletTable(int capacity, long lifetimeTicks) {
+        this.bullets = new BulletData[capacity];
+        for (int i = 0; i < capacity; i++) {
+            bullets[i] = new BulletData();
+        }
+        this.lifetimeTicks = lifetimeTicks;
+    }
+
+    /**
+     * Takes a pooled entry for a new bullet, or returns null if the table is full.
+     */
+    public BulletData spawn(int ownerId, float x, float y, float velocityX, float velocityY, long rewindNanos, long tick) {
+        if (size == bullets.length) return null;
+        BulletData bullet = bullets[size++];
+        bullet.id = nextId;
+        // Ids stay positive so they always encode as a varint of at most five bytes
+        nextId = nextId == Integer.MAX_VALUE ? 1 : nextId + 1;
+        bullet.ownerId = ownerId;
+        bullet.x = x;
+        bullet.y = y;
+        bullet.velocityX = velocityX;
+        bullet.velocityY = velocityY;
+        bullet.rewindNanos = rewindNanos;
+        bullet.expiryTick = tick + lifetimeTicks;
+        live = size;
+        if (size > peak) peak = size;
+        return bullet;
+    }
+
+    public BulletData get(int index) {
+        return bullets[index];
+    }
+
+    /**
+     * Returns the entry at index to the pool. The last live bullet moves into its
+     * place, so callers walking the table should go from the end to the start.
+     */
+    public void removeAt(int index) {
+        int last = --size;
+        BulletData removed = bullets[index];
+        bullets[index] = bullets[last];
+        bullets[last] = removed;
+        live = size;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int capacity() {
+        return bullets.length;
+    }
+
+    /**
+     * Number of bullets in flight. Safe to read from any thread.
+     */
+    public int getLiveCount() {
+        return live;
+    }
+
+    /**
+     * Most bullets in flight at once since the table was last cleared. Safe to
+     * read from any thread.
+     */
+    public int getPeakCount() {
+        return peak;
+    }
+
+    /**
+     * Empties the table for a room that is being recycled, peak included.
+     */
+    public void clear() {
+        size = 0;
+        live = 0;
+        peak = 0;
+    }
+}
@@ -0,0 +1,1384 @@
+package com.example.server;
+
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.security.SecureRandom;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Random;
+import java.util.function.Consumer;
+import java.util.function.LongFunction;
+import java.time.Instant;
+
+import com.example.protocol.PacketReader;
+import com.example.protocol.PacketWriter;
+import com.example.protocol.Protocol;
+import com.example.protocol.Snapshot;
+import com.example.protocol.SnapshotCodec;
+import com.example.protocol.SnapshotHistory;
+import com.example.server.BulletTable.BulletData;
+
+/**
+ * One independent match. A room owns its players, scores, respawns and
+ * simulation, and is only ever touched from the {@link RoomWorker} thread it is
+ * pinned to; other threads hand work over through {@link #deliver} and
+ * {@link #runOnRoomThread}.
+ */
+public class GameRoom {
+    private static final int GAME_WIDTH = 800;
+    private static final int GAME_HEIGHT = 600;
+    private static final float MIN_RESPAWN_TIME = 5.0f;
+    private static final float MAX_RESPAWN_TIME = 10.0f;
+    private volatile int id;
+    private volatile RoomWorker worker;
+    private final OutboundSender sender;
+    private final ServerMetrics metrics;
+    // Null when recording is turned off
+    private final MatchRecorder recorder;
+    private MatchRecorder.Recording recording;
+    // Career totals across matches, null when persistence is turned off
+    private final Leaderboard leaderboard;
+    // Builds the rate limiter of each player that joins, from the time they joined
+    private final LongFunction<InboundLimiter> limiters;
+    // Datagrams routed here by the server's receive thread, copied into pooled buffers.
+    // Joined players get their own queue, everyone else shares this one.
+    private static final int INBOUND_CAPACITY = 256;
+    private static final int SESSION_INBOUND_CAPACITY = 8;
+    private final BlockingQueue<InboundPacket> inbound = new ArrayBlockingQueue<>(INBOUND_CAPACITY);
+    private final BlockingQueue<InboundPacket> freeInbound = new ArrayBlockingQueue<>(INBOUND_CAPACITY);
+    // Players with queued datagrams, each listed at most once, served round-robin. Players
+    // are taken off when they leave, but one that left while a delivery raced it can stay
+    // listed until the next round, so there is room for a full room's worth of those too.
+    private final BlockingQueue<PlayerData> readySessions = new ArrayBlockingQueue<>(2 * MAX_PLAYERS);
+    private final PacketReader reader = new PacketReader();
+    // Rooms share worker threads, so every thread builds packets in its own writer. Writers
+    // take the largest message that can be fragmented, not just one datagram's worth.
+    private static final ThreadLocal<PacketWriter> writers =
+        ThreadLocal.withInitial(() -> new PacketWriter(Protocol.MAX_MESSAGE_SIZE + 1));
+    private final ByteBuffer fragment = ByteBuffer.allocate(Protocol.MAX_PACKET_SIZE);
+    // A reliable message too big for one datagram, with its RELIABLE header, ready to fragment
+    private final ByteBuffer fragmentedReliable = ByteBuffer.allocate(Protocol.MAX_MESSAGE_SIZE + 1);
+    private volatile long emptySince = System.nanoTime();
+    private final Random random = new Random();
+    private final ScoreManager scoreManager;
+    private final RecentConnections recentConnections;
+    private static final int TICK_RATE = 60; // Simulation ticks per second
+    private static final long TICK_INTERVAL_NANOS = 1_000_000_000L / TICK_RATE;
+    private static final float TICK_DELTA = 1.0f / TICK_RATE;
+    private static final int MAX_CATCH_UP_TICKS = 5;
+    private static final int SNAPSHOT_RATE = 20; // Snapshots per second
+    private static final int TICKS_PER_SNAPSHOT = TICK_RATE / SNAPSHOT_RATE;
+    // Full state every 10 seconds. Deltas are against what the client acknowledged and
+    // everything else it must not miss is sent reliably, so this is only a safety net.
+    private static final int KEYFRAME_INTERVAL = 10 * SNAPSHOT_RATE;
+    // Snapshots are skipped while nothing changes, but a client that hears nothing
+    // for a while assumes it was lost. This often it gets an empty one regardless.
+    private static final long KEEPALIVE_TICKS = Protocol.KEEPALIVE_MILLIS * TICK_RATE / 1000;
+    private long nextTick;
+    private long tickCount = 0;
+    // Delayed game actions, fired from the tick instead of sleeping threads
+    private static final int TIMER_WHEEL_SIZE = 512; // ~8.5 s per lap at 60 ticks per second
+    private static final long MATCH_RESET_DELAY_TICKS = 5L * TICK_RATE;
+    private final TimerWheel timers = new TimerWheel(TIMER_WHEEL_SIZE);
+    private TimerWheel.Timeout matchResetTimer;
+    // Players who send nothing for this long are dropped, 0 keeps them forever. Clients
+    // ack every snapshot and present their session after a second of silence, so this
+    // is generous.
+    private static final long IDLE_TIMEOUT_TICKS = Long.getLong("justvibes.idleTimeoutSeconds", 10L) * TICK_RATE;
+    // Message types sent over each client's reliable channel
+    private static final boolean[] RELIABLE_TYPES = new boolean[256];
+
+    static {
+        byte[] reliable = {Protocol.JOIN, Protocol.NAME, Protocol.HIT, Protocol.DEATH, Protocol.RESPAWN,
+            Protocol.DISCONNECT, Protocol.SCORES, Protocol.SCORE_UPDATE, Protocol.GAME_OVER, Protocol.SESSION};
+        for (byte type : reliable) {
+            RELIABLE_TYPES[type & 0xFF] = true;
+        }
+    }
+    private int snapshotSequence = 0;
+    // Combat, simulated on the server so every client sees the same hits
+    private static final int MAX_PLAYERS = 64;
+    private static final int MAX_NAME_LENGTH = 16;
+    private static final int MAX_HEALTH = 100;
+    private static final int BULLET_DAMAGE = 20;
+    private static final float BULLET_SPEED = 400.0f;
+    private static final float BULLET_RADIUS = 5.0f;
+    private static final float PLAYER_RADIUS = 16.0f;
+    private static final float HIT_DISTANCE = BULLET_RADIUS + PLAYER_RADIUS;
+    private static final long SHOOT_COOLDOWN_NANOS = 400_000_000L; // Clients use 0.5 s, leave room for jitter
+    // Bullets cross the map in under 3 s; the cooldown caps each player at ~8 in flight
+    private static final long BULLET_LIFETIME_TICKS = 3L * TICK_RATE;
+    private static final int MAX_BULLETS = MAX_PLAYERS * 8;
+    private final BulletTable bullets = new BulletTable(MAX_BULLETS, BULLET_LIFETIME_TICKS);
+    private final List<PlayerData> hitCandidates = new ArrayList<>();
+    private final Consumer<PlayerData> collectHitCandidate = hitCandidates::add;
+    // Lag compensation: hits are tested against where targets were when the shooter fired.
+    // The rewind is capped so high-latency clients cannot reach too far into the past.
+    private static final long MAX_REWIND_NANOS = Long.getLong("justvibes.maxRewindMillis", 200L) * 1_000_000L;
+    private static final float MAX_PLAYER_SPEED = 200.0f; // Matches Player.SPEED on the client
+    private static final float MAX_REWIND_DRIFT = MAX_PLAYER_SPEED * MAX_REWIND_NANOS / 1_000_000_000.0f;
+    private static final int POSITION_HISTORY_SIZE = 32; // >1 s of history at 10 position updates per second
+    private final float[] rewoundPosition = new float[2];
+    private long tickTime;
+    // Players only receive movement and shots from others within this distance
+    private static final float INTEREST_RADIUS = 500.0f;
+    private static final float GRID_CELL_SIZE = INTEREST_RADIUS / 2;
+    private final SpatialGrid<PlayerData> grid = new SpatialGrid<>(GAME_WIDTH, GAME_HEIGHT, GRID_CELL_SIZE);
+    private final List<PlayerData> interestCandidates = new ArrayList<>();
+    private final Consumer<PlayerData> collectInterestCandidate = interestCandidates::add;
+    // Work handed over from other threads, run on the room's worker so the grid stays single threaded
+    private final Queue<Runnable> pendingTasks = new ConcurrentLinkedQueue<>();
+
+    // Connected players, addressed by the handle they are known by on the wire
+    private final HandleTable<PlayerData> players = new HandleTable<>(MAX_PLAYERS);
+    // Resolves the sender of each datagram; also read by the server for shutdown notices
+    private final Map<InetSocketAddress, PlayerData> playersByAddress = new ConcurrentHashMap<>();
+    // Lets a client that comes back from a new address pick up where it left off
+    private final Map<Long, PlayerData> playersBySession = new HashMap<>();
+    private static final SecureRandom sessionTokens = new SecureRandom();
+
+    private static class RecentConnections {
+        private final LinkedHashMap<String, Instant> connections;
+        private static final int MAX_ENTRIES = 100;
+
+        public RecentConnections() {
+            connections = new LinkedHashMap<String, Instant>() {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, Instant> eldest) {
+                    return size() > MAX_ENTRIES;
+                }
+            };
+        }
+
+        public void addConnection(String ip) {
+            connections.put(ip, Instant.now());
+        }
+
+        public boolean hasRecentlyConnected(String ip) {
+            Instant lastConnection = connections.get(ip);
+            if (lastConnection == null) return false;
+            return lastConnection.plusSeconds(300).isAfter(Instant.now()); // 5 minutes threshold
+        }
+    }
+
+    private static class InboundPacket {
+        final ByteBuffer data = ByteBuffer.allocate(Protocol.MAX_PACKET_SIZE);
+        InetSocketAddress sender;
+    }
+
+    public GameRoom(int id, OutboundSender sender, ServerMetrics metrics, MatchRecorder recorder, Leaderboard leaderboard) {
+        this(id, sender, metrics, recorder, leaderboard, InboundLimiter::new);
+    }
+
+    GameRoom(int id, OutboundSender sender, ServerMetrics metrics, MatchRecorder recorder, Leaderboard leaderboard,
+            LongFunction<InboundLimiter> limiters) {
+        this.id = id;
+        this.sender = sender;
+        this.metrics = metrics;
+        this.recorder = recorder;
+        this.leaderboard = leaderboard;
+        this.limiters = limiters;
+        openRecording();
+        for (int i = 0; i < INBOUND_CAPACITY; i++) {
+            freeInbound.add(new InboundPacket());
+        }
+        
+        // Initialize managers
+        this.scoreManager = new ScoreManager();
+        this.recentConnections = new RecentConnections();
+        nextTick = System.nanoTime() + TICK_INTERVAL_NANOS;
+    }
+
+    private float[] getRandomSpawnPoint() {
+        // Define road positions
+        int[] horizontalRoads = {GAME_HEIGHT/3, 2*GAME_HEIGHT/3};
+        int[] verticalRoads = {GAME_WIDTH/3, 2*GAME_WIDTH/3};
+        
+        float x, y;
+        boolean validPosition;
+        
+        do {
+            // Generate random position
+            x = random.nextFloat() * GAME_WIDTH;
+            y = random.nextFloat() * GAME_HEIGHT;
+            
+            validPosition = true;
+            
+            // Check if position is on a road
+            for (int roadY : horizontalRoads) {
+                if (Math.abs(y - roadY) < 50) { // Road width is 100
+                    validPosition = false;
+                    break;
+                }
+            }
+            
+            if (validPosition) {
+                for (int roadX : verticalRoads) {
+                    if (Math.abs(x - roadX) < 50) {
+                        validPosition = false;
+                        break;
+                    }
+                }
+            }
+            
+        } while (!validPosition);
+        
+        return new float[]{x, y};
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    public RoomWorker getWorker() {
+        return worker;
+    }
+
+    void setWorker(RoomWorker worker) {
+        this.worker = worker;
+    }
+
+    public int getPlayerCount() {
+        return players.size();
+    }
+
+    /**
+     * How long the room has had no players, or 0 while anyone is connected.
+     */
+    public long getEmptyNanos(long now) {
+        long since = emptySince;
+        return since == 0 ? 0 : now - since;
+    }
+
+    public int getLiveBulletCount() {
+        return bullets.getLiveCount();
+    }
+
+    public int getPeakBulletCount() {
+        return bullets.getPeakCount();
+    }
+
+    public int getInboundQueueDepth() {
+        int depth = inbound.size();
+        for (PlayerData player : playersByAddress.values()) {
+            depth += player.inbound.size();
+        }
+        return depth;
+    }
+
+    /**
+     * Appends one RTT and one snapshot loss sample per connected client, and the
+     * client's rate-limited datagrams per message class. Called from the metrics
+     * endpoint, so it only reads fields that are safe to race on.
+     */
+    public void collectClientMetrics(StringBuilder rtt, StringBuilder loss, StringBuilder limited) {
+        for (PlayerData player : playersByAddress.values()) {
+            String labels = "{room=\"" + id + "\",player=\"" + player.id + "\"}";
+            rtt.append("justvibes_client_rtt_seconds").append(labels).append(' ')
+                .append(player.rttNanos / 1e9).append('\n');
+            int sent = player.snapshotsSent;
+            double ratio = sent == 0 ? 0 : Math.max(0, 1 - player.snapshotsAcked / (double) sent);
+            loss.append("justvibes_client_snapshot_loss_ratio").append(labels).append(' ')
+                .append(ratio).append('\n');
+            for (int i = 0; i < InboundLimiter.getClassCount(); i++) {
+                limited.append("justvibes_client_rate_limited_total{room=\"").append(id)
+                    .append("\",player=\"").append(player.id)
+                    .append("\",class=\"").append(InboundLimiter.getClassName(i)).append("\"} ")
+                    .append(player.limiter.getDropped(i)).append('\n');
+            }
+        }
+    }
+
+    public int getPendingTimerCount() {
+        return timers.getPendingCount();
+    }
+
+    public long getNextTick() {
+        return nextTick;
+    }
+
+    /**
+     * Copies a datagram into the sender's inbound queue. Called from the server's
+     * receive thread; the buffer is only borrowed for the duration of the call.
+     * Datagrams over the sender's rate budget are dropped on the type byte alone,
+     * before anything is copied or parsed. Returns false if a queue is full and the
+     * datagram was dropped.
+     */
+    public boolean deliver(ByteBuffer data, InetSocketAddress from) {
+        byte type = data.get(data.position() + 1);
+        PlayerData session = playersByAddress.get(from);
+        if (session == null) {
+            // From an unknown address only a JOIN or a resumed session does anything
+            if (type != Protocol.JOIN && type != Protocol.SESSION) return true;
+        } else if (!session.limiter.tryAcquire(type, System.nanoTime())) {
+            metrics.recordInboundRateLimited(type);
+            return true;
+        }
+        BlockingQueue<InboundPacket> queue = session != null ? session.inbound : inbound;
+        if (queue.remainingCapacity() == 0) return false;
+        InboundPacket packet = freeInbound.poll();
+        if (packet == null) return false;
+        packet.data.clear();
+        packet.data.put(data);
+        packet.data.flip();
+        packet.sender = from;
+        // Only this thread adds to the queue, so the capacity check above still holds
+        queue.offer(packet);
+        if (session != null) {
+            schedule(session);
+        }
+        RoomWorker current = worker;
+        if (current != null) {
+            current.wake();
+        }
+        return true;
+    }
+
+    /**
+     * Runs one pass of the room on its worker thread: inbound packets, handed-over
+     * tasks and any ticks that are due.
+     */
+    void update(long now) {
+        handleInbound();
+        runPendingTasks();
+        runTimers(now);
+    }
+
+    /**
+     * Handles queued datagrams in rounds: one from the shared queue, then one from
+     * each player that has any, so a burst from one client only delays that client.
+     */
+    private void handleInbound() {
+        boolean handled = true;
+        while (handled) {
+            handled = false;
+            InboundPacket packet = inbound.poll();
+            if (packet != null) {
+                handle(packet);
+                handled = true;
+            }
+            for (int sessions = readySessions.size(); sessions > 0; sessions--) {
+                PlayerData session = readySessions.poll();
+                if (session == null) break;
+                // Clear first so a delivery racing with this round reschedules the session
+                session.scheduled.set(false);
+                packet = session.inbound.poll();
+                if (packet != null) {
+                    session.lastSeenTick = tickCount;
+                    handle(packet);
+                    handled = true;
+                }
+                if (!session.inbound.isEmpty()) {
+                    schedule(session);
+                }
+            }
+        }
+    }
+
+    /**
+     * Lists a session for the next round unless it already is. Should the list
+     * ever be full the session is left unlisted rather than marked as listed, so
+     * its next datagram tries again instead of it never being served.
+     */
+    private void schedule(PlayerData session) {
+        if (session.scheduled.compareAndSet(false, true) && !readySessions.offer(session)) {
+            session.scheduled.set(false);
+        }
+    }
+
+    private void handle(InboundPacket packet) {
+        handlePacket(packet.data, packet.sender);
+        packet.sender = null;
+        freeInbound.offer(packet);
+    }
+
+    /**
+     * Resets the room to an empty match so it can be handed out again under a new id.
+     * Must run on the room's worker, or after the room has been detached from it.
+     */
+    void reset(int newId) {
+        for (int i = 0; i < players.size(); i++) {
+            PlayerData player = players.valueAt(i);
+            grid.remove(player, player.x, player.y);
+            releaseCareer(player);
+        }
+        InboundPacket packet;
+        for (PlayerData player : playersByAddress.values()) {
+            while ((packet = player.inbound.poll()) != null) {
+                freeInbound.offer(packet);
+            }
+        }
+        players.clear();
+        playersByAddress.clear();
+        playersBySession.clear();
+        readySessions.clear();
+        bullets.clear();
+        pendingTasks.clear();
+        while ((packet = inbound.poll()) != null) {
+            freeInbound.offer(packet);
+        }
+        timers.clear();
+        matchResetTimer = null;
+        scoreManager.clear();
+        tickCount = 0;
+        emptySince = System.nanoTime();
+        nextTick = System.nanoTime() + TICK_INTERVAL_NANOS;
+        id = newId;
+        closeRecording();
+        openRecording();
+    }
+
+    private void openRecording() {
+        if (recorder != null) {
+            recording = recorder.open(id, TICK_RATE);
+        }
+    }
+
+    /**
+     * Finishes the room's match log. Must run on the room's worker, or after the
+     * room has been detached from it.
+     */
+    void closeRecording() {
+        if (recording != null) {
+            recording.close();
+            recording = null;
+        }
+    }
+
+    /**
+     * Addresses of everyone in the room, for the server's shutdown notice.
+     */
+    public List<InetSocketAddress> getPlayerAddresses() {
+        return new ArrayList<>(playersByAddress.keySet());
+    }
+
+    public void stop() {
+        closeRecording();
+    }
+
+    public void runOnRoomThread(Runnable task) {
+        pendingTasks.add(task);
+        RoomWorker current = worker;
+        if (current != null) {
+            current.wake();
+        }
+    }
+
+    private void runPendingTasks() {
+        Runnable task;
+        while ((task = pendingTasks.poll()) != null) {
+            task.run();
+        }
+    }
+
+    private void runTimers(long now) {
+        int ticks = 0;
+        while (now - nextTick >= 0 && ticks < MAX_CATCH_UP_TICKS) {
+            tick();
+            ticks++;
+            // Schedule from the previous deadline so the tick rate does not drift
+            nextTick += TICK_INTERVAL_NANOS;
+        }
+        if (now - nextTick >= 0) {
+            // Too far behind to catch up, drop the missed ticks
+            nextTick = now + TICK_INTERVAL_NANOS;
+        }
+    }
+
+    private void tick() {
+        tickCount++;
+        tickTime = System.nanoTime();
+        runTick();
+        metrics.recordTick(System.nanoTime() - tickTime);
+    }
+
+    private void runTick() {
+        timers.advance();
+        simulateBullets(TICK_DELTA);
+        if (tickCount % TICKS_PER_SNAPSHOT == 0) {
+            broadcastSnapshot();
+        }
+        flushOutbound();
+        if (recording != null) {
+            recording.endTick(tickCount);
+            if (recording.isFull()) {
+                closeRecording();
+                openRecording();
+            }
+            // An empty room has nothing to show, its log stays untouched until someone joins
+            if (!players.isEmpty() && recording.isKeyframeDue(tickCount)) {
+                recordKeyframe();
+            }
+        }
+        if (players.isEmpty()) {
+            if (emptySince == 0) emptySince = tickTime;
+        } else {
+            emptySince = 0;
+        }
+    }
+
+    /**
+     * Sends everything queued during this tick, one datagram per client.
+     */
+    private void flushOutbound() {
+        // However many kills the tick had, scores go out once, with only what changed
+        if (scoreManager.hasChanges()) {
+            PacketWriter message = writer();
+            scoreManager.writeChanges(message);
+            broadcast(message);
+        }
+        for (int i = 0; i < players.size(); i++) {
+            PlayerData player = players.valueAt(i);
+            retransmit(player);
+            flush(player);
+        }
+    }
+
+    /**
+     * Adds every reliable message the client should have acknowledged by now to
+     * its batch, and the first send of any the window has only just reached.
+     * Runs once per tick, after everything new has been queued.
+     */
+    private void retransmit(PlayerData player) {
+        ReliableChannel channel = player.reliable;
+        long timeout = ReliableChannel.timeout(player.rttNanos);
+        int end = channel.getWindowEnd();
+        for (int sequence = channel.getOldest(); sequence != end; sequence++) {
+            if (!channel.isSent(sequence)) {
+                writeReliable(player, sequence);
+            } else if (channel.isDue(sequence, tickTime, timeout)) {
+                metrics.recordReliableRetransmit();
+                writeReliable(player, sequence);
+            }
+        }
+    }
+
+    private void writeReliable(PlayerData player, int sequence) {
+        if (player.reliable.write(sequence, player.outbound, tickTime)) return;
+        flush(player);
+        if (player.reliable.write(sequence, player.outbound, tickTime)) return;
+        // Too big for one datagram, it goes out in fragments with its sequence inside. One
+        // the outbox had no room for counts as unsent and is tried again next tick.
+        if (sendFragmented(player, player.reliable.encode(sequence, fragmentedReliable))) {
+            player.reliable.markSent(sequence, tickTime);
+        }
+    }
+
+    private void flush(PlayerData player) {
+        if (!player.outbound.isEmpty()) {
+            sender.enqueue(player.outbox, player.outbound.finish());
+            player.outbound.clear();
+            player.lastSendTick = tickCount;
+        }
+    }
+
+    private void queue(PlayerData recipient, ByteBuffer message) {
+        byte type = message.get(message.position() + 1);
+        metrics.recordOutbound(type, message.remaining());
+        if (RELIABLE_TYPES[type & 0xFF]) {
+            // Nothing more can be delivered in order to a client that is being dropped
+            if (recipient.reliableOverflowed) return;
+            int sequence = recipient.reliable.add(message);
+            if (sequence >= 0) {
+                // Beyond the window it waits for acks, retransmit() sends it once they come
+                if (recipient.reliable.isInWindow(sequence)) {
+                    writeReliable(recipient, sequence);
+                }
+                return;
+            }
+            // Hundreds of messages behind. Sent once it could be lost and the client would
+            // never know, so the client is dropped instead and joins again.
+            metrics.recordReliableOverflow();
+            dropOverflowed(recipient);
+            return;
+        }
+        OutboundBatch batch = recipient.outbound;
+        if (batch.append(message)) return;
+        flush(recipient);
+        if (!batch.append(message)) {
+            sendFragmented(recipient, message);
+        }
+    }
+
+    private void dropOverflowed(PlayerData player) {
+        player.reliableOverflowed = true;
+        System.out.println("[Server] " + player.name + " is too far behind on reliable messages, dropping them");
+        // The caller may be walking the player table, remove them on the next pass
+        pendingTasks.add(() -> {
+            if (playersByAddress.get(player.address) == player) {
+                handleDisconnect(player.address);
+            }
+        });
+    }
+
+    /**
+     * Sends a message too big for one datagram as FRAGMENT datagrams, right
+     * after everything queued before it. Returns false if none of it was sent.
+     */
+    private boolean sendFragmented(PlayerData recipient, ByteBuffer message) {
+        int start = message.position() + 1; // Without the version byte
+        int length = message.limit() - start;
+        int count = (length + Protocol.FRAGMENT_PAYLOAD - 1) / Protocol.FRAGMENT_PAYLOAD;
+        if (count > Protocol.MAX_FRAGMENTS) {
+            System.err.println("[Server] Dropping a " + length + " byte message, too big to fragment");
+            return false;
+        }
+        // All of it or none
+        if (!sender.reserve(recipient.outbox, count)) return false;
+        metrics.recordFragmented(count);
+        int messageId = ++recipient.fragmentedMessages;
+        for (int index = 0; index < count; index++) {
+            int offset = index * Protocol.FRAGMENT_PAYLOAD;
+            int size = Math.min(Protocol.FRAGMENT_PAYLOAD, length - offset);
+            fragment.clear();
+            fragment.put(Protocol.VERSION).put(Protocol.FRAGMENT);
+            int value = messageId;
+            while ((value & ~0x7F) != 0) {
+                fragment.put((byte) ((value & 0x7F) | 0x80));
+                value >>>= 7;
+            }
+            fragment.put((byte) value);
+            fragment.put((byte) index).put((byte) count);
+            fragment.put(fragment.position(), message, start + offset, size);
+            fragment.position(fragment.position() + size);
+            fragment.flip();
+            sender.enqueue(recipient.outbox, fragment);
+        }
+        recipient.lastSendTick = tickCount;
+        return true;
+    }
+
+    private void handlePacket(ByteBuffer data, InetSocketAddress sender) {
+        try {
+            reader.wrap(data);
+            byte type = reader.readHeader();
+            reader.readVarInt(); // Room id, already used by the server to route the datagram here
+            switch (type) {
+                case Protocol.JOIN:
+                    handleJoin(sender, reader.readString());
+                    break;
+                case Protocol.POS:
+                    handlePosition(sender, reader);
+                    break;
+                case Protocol.SHOOT:
+                    handleShoot(sender, reader);
+                    break;
+                case Protocol.DISCONNECT:
+                    handleDisconnect(sender);
+                    break;
+                case Protocol.SNAPSHOT_ACK:
+                    handleSnapshotAck(sender, reader);
+                    break;
+                case Protocol.SESSION:
+                    handleResume(sender, reader.readLong());
+                    break;
+                default:
+                    break;
+            }
+        } catch (RuntimeException e) {
+            // Truncated or malformed packet, drop it
+        }
+    }
+
+    private PacketWriter writer() {
+        return writers.get();
+    }
+
+    private String generateGuestName() {
+        // Generate a random number between 1000 and 9999
+        int randomNum = 1000 + random.nextInt(9000);
+        return "Guest" + randomNum;
+    }
+
+    /**
+     * The name a client asked for, without control characters and cut to
+     * MAX_NAME_LENGTH, or null if nothing is left of it.
+     */
+    private static String cleanName(String requested) {
+        StringBuilder name = new StringBuilder();
+        for (int i = 0; i < requested.length() && name.length() < MAX_NAME_LENGTH; i++) {
+            char c = requested.charAt(i);
+            if (!Character.isISOControl(c)) {
+                name.append(c);
+            }
+        }
+        String cleaned = name.toString().trim();
+        return cleaned.isEmpty() ? null : cleaned;
+    }
+
+    private void handleJoin(InetSocketAddress address, String requestedName) {
+        if (playersByAddress.containsKey(address)) return; // Duplicate JOIN, the reply is already on its way
+        if (players.size() == MAX_PLAYERS) {
+            System.out.println("[Server] Room " + id + " is full, ignoring join from " + address);
+            return;
+        }
+        String ipAddress = address.getAddress().getHostAddress();
+        
+        // Check if this IP has connected recently
+        if (recentConnections.hasRecentlyConnected(ipAddress)) {
+            System.out.println("Warning: Rapid reconnection attempt from " + ipAddress);
+            // You could add additional logic here, like rate limiting
+        }
+        
+        recentConnections.addConnection(ipAddress);
+        float[] spawnPoint = getRandomSpawnPoint();
+        
+        // Careers are kept by the name the player picked; guests play under a made-up one and keep none
+        String career = cleanName(requestedName);
+        if (career != null && leaderboard != null && !leaderboard.claim(career)) {
+            // Someone is already playing under it, the name is not theirs to add to
+            System.out.println("[Server] " + career + " is already playing, " + address + " joins as a guest");
+            career = null;
+        }
+        String name = career != null ? career : generateGuestName();
+        PlayerData newPlayer = new PlayerData(name, career, address, sender.createOutbox(address),
+            limiters.apply(System.nanoTime()), spawnPoint[0], spawnPoint[1]);
+        int playerId = players.add(newPlayer);
+        newPlayer.id = playerId;
+        newPlayer.session = newSessionToken();
+        playersByAddress.put(address, newPlayer);
+        playersBySession.put(newPlayer.session, newPlayer);
+        newPlayer.lastSeenTick = tickCount;
+        newPlayer.lastSendTick = tickCount;
+        if (IDLE_TIMEOUT_TICKS > 0) {
+            newPlayer.idleCheck = () -> checkIdle(newPlayer);
+            newPlayer.idleTimer = timers.schedule(IDLE_TIMEOUT_TICKS, newPlayer.idleCheck);
+        }
+        newPlayer.respawn = () -> respawnPlayer(newPlayer);
+        grid.insert(newPlayer, newPlayer.x, newPlayer.y);
+        newPlayer.history.record(System.nanoTime(), newPlayer.x, newPlayer.y);
+        
+        // Send the new player their ID and spawn position
+        PacketWriter joinMessage = writer().begin(Protocol.JOIN)
+            .writeVarInt(playerId)
+            .writeFloat(spawnPoint[0])
+            .writeFloat(spawnPoint[1]);
+        record(joinMessage.toBuffer());
+        sendToClient(joinMessage, newPlayer);
+        // Never recorded, a replay must not hand out live sessions
+        sendToClient(writeSession(newPlayer.session), newPlayer);
+
+        // Names are only sent once, every later message refers to players by handle
+        for (int i = 0; i < players.size(); i++) {
+            PlayerData existing = players.valueAt(i);
+            if (existing != newPlayer) {
+                sendToClient(writeName(existing), newPlayer);
+            }
+        }
+        broadcast(writeName(newPlayer));
+        
+        // Introduce the new player to everyone in range and vice versa
+        updateInterest(newPlayer);
+        scoreManager.addPlayer(playerId);
+        
+        // The new player gets the whole table, everyone else just their entry with
+        // this tick's score update. The batch keeps both behind the JOIN.
+        sendToClient(writeScores(), newPlayer);
+    }
+
+    private long newSessionToken() {
+        long token;
+        do {
+            token = sessionTokens.nextLong();
+        } while (token == 0 || playersBySession.containsKey(token));
+        return token;
+    }
+
+    /**
+     * Moves a session to the address it was presented from. The player keeps
+     * their handle, score and interest set; the client gets back what it may
+     * have missed while unreachable (names, its own state, the score table) and
+     * snapshots carry on as deltas from the last one it acknowledged.
+     */
+    private void handleResume(InetSocketAddress address, long token) {
+        PlayerData player = token != 0 ? playersBySession.get(token) : null;
+        if (player == null) {
+            // Expired or made up, tell the client to join again. The reply is no
+            // bigger than the request and gives nothing away.
+            if (!playersByAddress.containsKey(address)) {
+                sender.enqueue(sender.createOutbox(address), writeSession(0).toBuffer());
+            }
+            return;
+        }
+        if (!address.equals(player.address)) {
+            if (playersByAddress.containsKey(address)) return; // Someone else's address
+            playersByAddress.remove(player.address);
+            System.out.println("[Server] " + player.name + " resumed from " + address + " (was " + player.address + ")");
+            player.address = address;
+            player.outbox.redirect(address);
+            playersByAddress.put(address, player);
+        }
+        player.lastSeenTick = tickCount;
+        sendToClient(writeSession(token), player);
+        for (int i = 0; i < players.size(); i++) {
+            PlayerData existing = players.valueAt(i);
+            if (existing != player) {
+                sendToClient(writeName(existing), player);
+            }
+        }
+        sendToClient(writeClientState(player), player);
+        sendToClient(writeScores(), player);
+    }
+
+    private void sendToClient(PacketWriter message, PlayerData recipient) {
+        queue(recipient, message.toBuffer());
+    }
+
+    private void handlePosition(InetSocketAddress address, PacketReader message) {
+        int playerId = message.readVarInt();
+        float x = message.readFloat();
+        float y = message.readFloat();
+        int sequence = message.readVarInt();
+        
+        PlayerData player = playersByAddress.get(address);
+        // A position that arrives after a newer one is stale, drop it
+        if (player != null && player.id == playerId && sequence - player.positionSequence > 0) {
+            player.positionSequence = sequence;
+            movePlayer(player, x, y);
+            // Only players who can see the sender get the update
+            broadcastPlayerPosition(player);
+        }
+    }
+
+    private void handleShoot(InetSocketAddress address, PacketReader message) {
+        PlayerData player = playersByAddress.get(address);
+        if (player != null && !player.isDead) {
+            message.readFloat(); // x, the server uses its own copy of the position
+            message.readFloat(); // y
+            float dirX = message.readFloat();
+            float dirY = message.readFloat();
+            float length = (float) Math.sqrt(dirX * dirX + dirY * dirY);
+            long now = System.nanoTime();
+            if (length == 0 || now - player.lastShotTime < SHOOT_COOLDOWN_NANOS) return;
+            player.lastShotTime = now;
+
+            // Rewind targets by the shooter's round trip, which is how stale their view is
+            long rewind = player.rttNanos > 0 ? Math.min(player.rttNanos, MAX_REWIND_NANOS) : 0;
+            BulletData bullet = bullets.spawn(player.id, player.x, player.y,
+                dirX / length * BULLET_SPEED, dirY / length * BULLET_SPEED, rewind, tickCount);
+            if (bullet == null) return;
+            broadcastShot(player, dirX, dirY, bullet.id);
+        }
+    }
+
+    /**
+     * Runs once per timeout period for each player rather than on every datagram:
+     * if they were heard from since, the check just moves to when they would go
+     * stale, otherwise they are removed like a DISCONNECT.
+     */
+    private void checkIdle(PlayerData player) {
+        long idle = tickCount - player.lastSeenTick;
+        if (idle < IDLE_TIMEOUT_TICKS) {
+            player.idleTimer = timers.schedule(IDLE_TIMEOUT_TICKS - idle, player.idleCheck);
+            return;
+        }
+        System.out.println("[Server] " + player.name + " timed out after " + idle / TICK_RATE + "s of silence");
+        metrics.recordSessionTimedOut();
+        handleDisconnect(player.address);
+    }
+
+    private void handleDisconnect(InetSocketAddress address) {
+        PlayerData player = playersByAddress.remove(address);
+        if (player != null) {
+            if (player.idleTimer != null) {
+                player.idleTimer.cancel();
+            }
+            if (player.respawnTimer != null) {
+                player.respawnTimer.cancel();
+            }
+            // Anything still queued from this client is dropped; should a racing delivery list
+            // the session again, a later round finds its queue empty or hands the packet back
+            readySessions.remove(player);
+            InboundPacket packet;
+            while ((packet = player.inbound.poll()) != null) {
+                packet.sender = null;
+                freeInbound.offer(packet);
+            }
+            // Remove from all data structures
+            players.remove(player.id);
+            playersBySession.remove(player.session);
+            releaseCareer(player);
+            grid.remove(player, player.x, player.y);
+            for (PlayerData other : player.visible) {
+                other.visible.remove(player);
+            }
+            player.visible.clear();
+            
+            // Broadcast player disconnection to all other clients
+            broadcastPlayerDisconnected(player.id);
+            scoreManager.removePlayer(player.id);
+        }
+    }
+
+    private void releaseCareer(PlayerData player) {
+        if (player.career != null && leaderboard != null) {
+            leaderboard.release(player.career);
+        }
+    }
+
+    /**
+     * Career the player at the address plays under, null for a guest or nobody.
+     */
+    String getCareer(InetSocketAddress address) {
+        PlayerData player = playersByAddress.get(address);
+        return player != null ? player.career : null;
+    }
+
+    /**
+     * Queues a message for the player at the address the way the room queues
+     * its own, reliably if its type is one of the reliable ones.
+     */
+    void sendTo(InetSocketAddress address, ByteBuffer message) {
+        PlayerData player = playersByAddress.get(address);
+        if (player != null) {
+            queue(player, message);
+        }
+    }
+
+    InboundLimiter getLimiter(InetSocketAddress address) {
+        PlayerData player = playersByAddress.get(address);
+        return player != null ? player.limiter : null;
+    }
+
+    private void handleSnapshotAck(InetSocketAddress address, PacketReader message) {
+        int sequence = message.readVarInt();
+        int reliableAck = message.readVarInt();
+        int reliableBits = message.readVarInt();
+        PlayerData player = playersByAddress.get(address);
+        if (player != null) {
+            player.reliable.acknowledge(reliableAck, reliableBits);
+        }
+        // Acks can arrive out of order, only ever move the baseline forward
+        if (player != null && sequence - player.ackedSnapshot > 0 && sequence - snapshotSequence <= 0) {
+            player.ackedSnapshot = sequence;
+            if (player.snapshots.get(sequence) != null) {
+                player.snapshotsAcked++;
+                // Clients ack on receipt, so send-to-ack time is a round trip sample
+                long sample = System.nanoTime() - player.snapshotSendTimes[sequence & (SnapshotHistory.SIZE - 1)];
+                player.rttNanos = player.rttNanos > 0 ? player.rttNanos + (sample - player.rttNanos) / 8 : sample;
+            }
+        }
+    }
+
+    private void simulateBullets(float delta) {
+        // Walk backwards, removing swaps the last bullet into the freed slot
+        for (int i = bullets.size() - 1; i >= 0; i--) {
+            BulletData bullet = bullets.get(i);
+            if (tickCount >= bullet.expiryTick) {
+                bullets.removeAt(i);
+                continue;
+            }
+            float endX = bullet.x + bullet.velocityX * delta;
+            float endY = bullet.y + bullet.velocityY * delta;
+
+            PlayerData victim = findFirstHit(bullet, endX, endY);
+            if (victim != null) {
+                applyHit(bullet, victim);
+                bullets.removeAt(i);
+                continue;
+            }
+
+            bullet.x = endX;
+            bullet.y = endY;
+            if (endX < 0 || endX > GAME_WIDTH || endY < 0 || endY > GAME_HEIGHT) {
+                bullets.removeAt(i);
+            }
+        }
+    }
+
+    /**
+     * Sweeps the bullet from its current position to (endX, endY) and returns the
+     * first living player it touches along the way, so fast bullets cannot skip
+     * over a player between two ticks.
+     */
+    private PlayerData findFirstHit(BulletData bullet, float endX, float endY) {
+        float dx = endX - bullet.x;
+        float dy = endY - bullet.y;
+        // Rewound targets can be a little away from where the grid has them now
+        float reach = (float) Math.sqrt(dx * dx + dy * dy) / 2 + HIT_DISTANCE
+            + (bullet.rewindNanos > 0 ? MAX_REWIND_DRIFT : 0);
+        long targetTime = tickTime - bullet.rewindNanos;
+
+        hitCandidates.clear();
+        grid.forEachNear(bullet.x + dx / 2, bullet.y + dy / 2, reach, collectHitCandidate);
+
+        PlayerData firstHit = null;
+        float firstHitTime = Float.MAX_VALUE;
+        for (PlayerData candidate : hitCandidates) {
+            if (candidate.isDead || candidate.id == bullet.ownerId) continue;
+            float targetX = candidate.x;
+            float targetY = candidate.y;
+            if (bullet.rewindNanos > 0 && candidate.history.sample(targetTime, rewoundPosition)) {
+                targetX = rewoundPosition[0];
+                targetY = rewoundPosition[1];
+            }
+            float time = sweptHitTime(bullet.x, bullet.y, dx, dy, targetX, targetY, HIT_DISTANCE);
+            if (time >= 0 && time < firstHitTime) {
+                firstHit = candidate;
+                firstHitTime = time;
+            }
+        }
+        return firstHit;
+    }
+
+    /**
+     * Returns the fraction of the segment (x, y) + t * (dx, dy), t in [0, 1], at
+     * which it first comes within radius of (cx, cy), or -1 if it never does.
+     */
+    private static float sweptHitTime(float x, float y, float dx, float dy, float cx, float cy, float radius) {
+        float fx = x - cx;
+        float fy = y - cy;
+        float c = fx * fx + fy * fy - radius * radius;
+        if (c <= 0) return 0; // Already overlapping at the start of the tick
+        float a = dx * dx + dy * dy;
+        if (a == 0) return -1;
+        float b = 2 * (fx * dx + fy * dy);
+        float discriminant = b * b - 4 * a * c;
+        if (discriminant < 0) return -1;
+        float t = (-b - (float) Math.sqrt(discriminant)) / (2 * a);
+        return t >= 0 && t <= 1 ? t : -1;
+    }
+
+    private void applyHit(BulletData bullet, PlayerData victim) {
+        victim.health = Math.max(0, victim.health - BULLET_DAMAGE);
+        broadcastHit(victim, bullet);
+        if (victim.health == 0) {
+            killPlayer(victim, bullet.ownerId);
+        }
+    }
+
+    private void killPlayer(PlayerData victim, int killerId) {
+        victim.isDead = true;
+        // Each death gets its own timer, so respawn times do not depend on who else is dead
+        float respawnTime = MIN_RESPAWN_TIME + random.nextFloat() * (MAX_RESPAWN_TIME - MIN_RESPAWN_TIME);
+        victim.respawnTimer = timers.schedule((long) (respawnTime * TICK_RATE), victim.respawn);
+        broadcastDeath(victim.id, killerId);
+
+        PlayerData killer = players.get(killerId);
+        if (killer != null) {
+            scoreManager.addKill(killerId);
+            if (leaderboard != null && (killer.career != null || victim.career != null)) {
+                leaderboard.recordKill(killer.career, victim.career);
+            }
+        }
+
+        if (scoreManager.hasWinner()) {
+            broadcastGameOver(scoreManager.getWinner());
+            // Reset after a delay, unless a reset is already on its way
+            if (matchResetTimer == null || !matchResetTimer.isPending()) {
+                matchResetTimer = timers.schedule(MATCH_RESET_DELAY_TICKS, scoreManager::reset);
+            }
+        }
+    }
+
+    private void respawnPlayer(PlayerData player) {
+        float[] spawnPoint = getRandomSpawnPoint();
+        player.isDead = false;
+        player.health = MAX_HEALTH;
+        player.history.clear();
+        movePlayer(player, spawnPoint[0], spawnPoint[1]);
+        broadcastRespawn(player);
+    }
+
+    private void movePlayer(PlayerData player, float x, float y) {
+        grid.move(player, player.x, player.y, x, y);
+        player.x = x;
+        player.y = y;
+        player.history.record(System.nanoTime(), x, y);
+        updateInterest(player);
+    }
+
+    /**
+     * Recomputes who can see the given player after it moved. Visibility is
+     * symmetric, so players coming into range exchange ENTER_VIEW messages and
+     * players going out of range exchange LEAVE_VIEW.
+     */
+    private void updateInterest(PlayerData player) {
+        // Scratch lists are reused, this runs for every position update
+        interestCandidates.clear();
+        grid.forEachNear(player.x, player.y, INTEREST_RADIUS, collectInterestCandidate);
+
+        for (int i = player.visible.size() - 1; i >= 0; i--) {
+            PlayerData other = player.visible.get(i);
+            if (!isInRange(player, other)) {
+                player.visible.remove(i);
+                other.visible.remove(player);
+                sendLeaveView(player, other);
+                sendLeaveView(other, player);
+            }
+        }
+
+        for (int i = 0; i < interestCandidates.size(); i++) {
+            PlayerData other = interestCandidates.get(i);
+            if (other != player && isInRange(player, other) && !player.visible.contains(other)) {
+                player.visible.add(other);
+                other.visible.add(player);
+                sendEnterView(player, other);
+                sendEnterView(other, player);
+            }
+        }
+    }
+
+    private boolean isInRange(PlayerData a, PlayerData b) {
+        float dx = a.x - b.x;
+        float dy = a.y - b.y;
+        return dx * dx + dy * dy <= INTEREST_RADIUS * INTEREST_RADIUS;
+    }
+
+    private void sendEnterView(PlayerData recipient, PlayerData subject) {
+        PacketWriter message = writer().begin(Protocol.ENTER_VIEW)
+            .writeVarInt(subject.id)
+            .writeFloat(subject.x)
+            .writeFloat(subject.y)
+            .writeBoolean(subject.isDead);
+        sendToClient(message, recipient);
+    }
+
+    private void sendLeaveView(PlayerData recipient, PlayerData subject) {
+        sendToClient(writer().begin(Protocol.LEAVE_VIEW).writeVarInt(subject.id), recipient);
+    }
+
+    private void broadcastPlayerPosition(PlayerData player) {
+        PacketWriter message = writer().begin(Protocol.POS)
+            .writeVarInt(player.id)
+            .writeFloat(player.x)
+            .writeFloat(player.y);
+        broadcastToViewers(message, player, false);
+    }
+
+    private void broadcastShot(PlayerData shooter, float dirX, float dirY, int bulletId) {
+        PacketWriter message = writer().begin(Protocol.SHOOT)
+            .writeVarInt(shooter.id)
+            .writeFloat(shooter.x)
+            .writeFloat(shooter.y)
+            .writeFloat(dirX)
+            .writeFloat(dirY)
+            .writeVarInt(bulletId);
+        broadcastToViewers(message, shooter, true);
+    }
+
+    private void broadcastHit(PlayerData victim, BulletData bullet) {
+        PacketWriter message = writer().begin(Protocol.HIT)
+            .writeVarInt(victim.id)
+            .writeVarInt(bullet.ownerId)
+            .writeVarInt(bullet.id)
+            .writeVarInt(victim.health);
+        broadcastToViewers(message, victim, true);
+    }
+
+    private void broadcastDeath(int playerId, int killerId) {
+        PacketWriter message = writer().begin(Protocol.DEATH)
+            .writeVarInt(playerId)
+            .writeVarInt(killerId);
+        broadcast(message);
+    }
+
+    private void broadcastPlayerDisconnected(int playerId) {
+        broadcast(writer().begin(Protocol.DISCONNECT).writeVarInt(playerId));
+    }
+
+    private void broadcastRespawn(PlayerData player) {
+        PacketWriter message = writer().begin(Protocol.RESPAWN)
+            .writeVarInt(player.id)
+            .writeFloat(player.x)
+            .writeFloat(player.y);
+        broadcastToViewers(message, player, true);
+    }
+
+    private PacketWriter writeScores() {
+        PacketWriter message = writer();
+        scoreManager.writeScores(message);
+        return message;
+    }
+
+    private PacketWriter writeSession(long token) {
+        return writer().begin(Protocol.SESSION).writeLong(token);
+    }
+
+    private PacketWriter writeClientState(PlayerData player) {
+        return writer().begin(Protocol.CLIENT)
+            .writeVarInt(player.id)
+            .writeFloat(player.x)
+            .writeFloat(player.y)
+            .writeFloat(0)
+            .writeFloat(0)
+            .writeVarInt(player.health)
+            .writeBoolean(player.isDead);
+    }
+
+    private PacketWriter writeName(PlayerData player) {
+        return writer().begin(Protocol.NAME)
+            .writeVarInt(player.id)
+            .writeString(player.name);
+    }
+
+    private void broadcastGameOver(int winnerId) {
+        broadcast(writer().begin(Protocol.GAME_OVER).writeVarInt(winnerId));
+    }
+
+    // Messages are encoded once and the same bytes are copied into every recipient's batch
+    private void broadcast(PacketWriter message) {
+        ByteBuffer buffer = message.toBuffer();
+        record(buffer);
+        for (int i = 0; i < players.size(); i++) {
+            queue(players.valueAt(i), buffer);
+        }
+    }
+
+    private void broadcastToViewers(PacketWriter message, PlayerData source, boolean includeSource) {
+        ByteBuffer buffer = message.toBuffer();
+        record(buffer);
+        if (includeSource) {
+            queue(source, buffer);
+        }
+        for (int i = 0; i < source.visible.size(); i++) {
+            queue(source.visible.get(i), buffer);
+        }
+    }
+
+    /**
+     * Adds an accepted input or emitted event to the match log. Every message a
+     * client could see goes in once, whoever it was actually sent to; per-client
+     * views (interest changes, snapshots) are left out, keyframes cover them.
+     */
+    private void record(ByteBuffer message) {
+        if (recording != null) {
+            recording.append(message);
+        }
+    }
+
+    /**
+     * Logs the full room state as messages a freshly joined client understands:
+     * bullets first, so the player state after them puts shooters back in place.
+     */
+    private void recordKeyframe() {
+        PacketWriter message = writer();
+        for (int i = 0; i < bullets.size(); i++) {
+            BulletData bullet = bullets.get(i);
+            recording.append(message.begin(Protocol.SHOOT)
+                .writeVarInt(bullet.ownerId)
+                .writeFloat(bullet.x)
+                .writeFloat(bullet.y)
+                .writeFloat(bullet.velocityX / BULLET_SPEED)
+                .writeFloat(bullet.velocityY / BULLET_SPEED)
+                .writeVarInt(bullet.id)
+                .toBuffer());
+        }
+        for (int i = 0; i < players.size(); i++) {
+            PlayerData player = players.valueAt(i);
+            recording.append(writeName(player).toBuffer());
+            recording.append(writeClientState(player).toBuffer());
+        }
+        recording.append(writeScores().toBuffer());
+        recording.endKeyframe(tickCount);
+    }
+
+    private static class PlayerData {
+        // Handle from the players table, assigned right after the player is added
+        int id;
+        // Secret the client presents to resume from another address
+        long session;
+        // Tick of the last datagram from this client, and the timer that checks it (null
+        // when the idle timeout is off)
+        long lastSeenTick;
+        // Tick of the last datagram to this client
+        long lastSendTick;
+        Runnable idleCheck;
+        TimerWheel.Timeout idleTimer;
+        // Brings the player back after a death; the timer is null until they first die
+        Runnable respawn;
+        TimerWheel.Timeout respawnTimer;
+        final String name;
+        // Name of the player's career on the leaderboard, null for guests
+        final String career;
+        InetSocketAddress address;
+        float x, y;
+        boolean isDead;
+        int health = MAX_HEALTH;
+        long lastShotTime;
+        // Smoothed round trip time from snapshot acks, 0 until the first sample.
+        // Volatile along with the counters below, the metrics endpoint reads them.
+        volatile long rttNanos;
+        volatile int snapshotsSent;
+        volatile int snapshotsAcked;
+        final long[] snapshotSendTimes = new long[SnapshotHistory.SIZE];
+        final PositionHistory history = new PositionHistory(POSITION_HISTORY_SIZE);
+        // Everything queued for this client during the current tick
+        final OutboundBatch outbound = new OutboundBatch();
+        // Events this client must not miss, kept until it acknowledges them. Set once
+        // the channel is full, the client is about to be removed.
+        final ReliableChannel reliable = new ReliableChannel();
+        boolean reliableOverflowed;
+        // Newest position sequence applied from this client
+        int positionSequence;
+        // Id of the last message sent to this client in fragments
+        int fragmentedMessages;
+        final OutboundSender.Outbox outbox;
+        // Snapshots sent to this client, and the newest one it has acknowledged
+        final SnapshotHistory snapshots = new SnapshotHistory();
+        int ackedSnapshot;
+        int snapshotsSinceKeyframe;
+        // Players within INTEREST_RADIUS, kept symmetric by updateInterest(). A list
+        // rather than a set: it stays small and is walked by index without allocating.
+        final List<PlayerData> visible = new ArrayList<>();
+        // Datagrams from this client waiting for the room, and its rate budget. The
+        // limiter is only used by the server's receive thread.
+        final BlockingQueue<InboundPacket> inbound = new ArrayBlockingQueue<>(SESSION_INBOUND_CAPACITY);
+        final AtomicBoolean scheduled = new AtomicBoolean(false);
+        final InboundLimiter limiter;
+
+        PlayerData(String name, String career, InetSocketAddress address, OutboundSender.Outbox outbox,
+                InboundLimiter limiter, float x, float y) {
+            this.name = name;
+            this.career = career;
+            this.outbox = outbox;
+            this.limiter = limiter;
+            this.address = address;
+            this.x = x;
+            this.y = y;
+            this.isDead = false;
+        }
+    }
+
+    private void broadcastSnapshot() {
+        if (players.isEmpty()) return;
+
+        int sequence = ++snapshotSequence;
+        PacketWriter message = writer();
+        for (int i = 0; i < players.size(); i++) {
+            PlayerData player = players.valueAt(i);
+            // Each client's snapshot only covers itself and the players it can see
+            Map<Integer, Snapshot.Entry> entries = new LinkedHashMap<>();
+            entries.put(player.id, new Snapshot.Entry(player.x, player.y, player.isDead));
+            for (PlayerData other : player.visible) {
+                entries.put(other.id, new Snapshot.Entry(other.x, other.y, other.isDead));
+            }
+            Snapshot snapshot = new Snapshot(sequence, entries);
+
+            // Delta against the last snapshot this client acknowledged, or a keyframe if
+            // that baseline has fallen out of the ring or a periodic keyframe is due
+            Snapshot base = player.snapshots.get(player.ackedSnapshot);
+            if (base == null || ++player.snapshotsSinceKeyframe >= KEYFRAME_INTERVAL) {
+                base = null;
+                player.snapshotsSinceKeyframe = 0;
+            }
+            player.snapshots.put(snapshot);
+            player.snapshotSendTimes[sequence & (SnapshotHistory.SIZE - 1)] = System.nanoTime();
+            // Nothing else going out to this client for a while, send the snapshot even if unchanged
+            boolean keepalive = player.outbound.isEmpty() && tickCount - player.lastSendTick >= KEEPALIVE_TICKS;
+            if (SnapshotCodec.write(message, base, snapshot, keepalive)) {
+                player.snapshotsSent++;
+                queue(player, message.toBuffer());
+            }
+        }
+    }
+}
@@ -1,169 +1,138 @@
 package com.example.server;
 
 import java.io.IOException;
-import java.net.DatagramPacket;
-import java.net.DatagramSocket;
-import java.net.InetAddress;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.LinkedHashMap;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
 import java.util.Map;
-import java.util.Random;
-import org.json.JSONObject;
-import java.time.Instant;
-
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.ToIntFunction;
+
+import com.example.protocol.PacketReader;
+import com.example.protocol.PacketWriter;
+import com.example.protocol.Protocol;
+
+/**
+ * Owns the UDP socket and hosts any number of {@link GameRoom}s. Every client
+ * datagram names its room right after the header; the receive thread routes it
+ * to that room, creating the room on the first JOIN. Rooms are spread across
+ * {@link RoomWorker} threads and are recycled once they have been empty for a while.
+ */
 public class GameServer {
     private static final int PORT = 7777;
-    private static final int BUFFER_SIZE = 1024;
-    private static final int GAME_WIDTH = 800;
-    private static final int GAME_HEIGHT = 600;
-    @SuppressWarnings("unused")
-    private static final float MIN_RESPAWN_TIME = 5.0f;
-    @SuppressWarnings("unused")
-    private static final float MAX_RESPAWN_TIME = 10.0f;
-    private final DatagramSocket socket;
-    private final byte[] receiveBuffer = new byte[BUFFER_SIZE];
-    private boolean running = true;
-    private final Random random = new Random();
-    private final RespawnManager respawnManager;
-    private final ScoreManager scoreManager;
-    private final RecentConnections recentConnections;
-    private float stateUpdateTimer = 0;
-    private static final float STATE_UPDATE_INTERVAL = 5.0f; // Changed from 30 to 5 seconds
-
-    // Store connected players: Key = PlayerID, Value = Player Data
-    private final Map<String, PlayerData> players = new ConcurrentHashMap<>();
-    // Map to store client address to player ID mapping
-    private final Map<String, String> clientToPlayerId = new ConcurrentHashMap<>();
-    // Map to store bullet owner information: Key = BulletID, Value = PlayerID
-    private final Map<String, String> bulletOwners = new ConcurrentHashMap<>();
-
-    private static class RecentConnections {
-        private final LinkedHashMap<String, Instant> connections;
-        private static final int MAX_ENTRIES = 100;
-
-        public RecentConnections() {
-            connections = new LinkedHashMap<String, Instant>() {
-                @Override
-                protected boolean removeEldestEntry(Map.Entry<String, Instant> eldest) {
-                    return size() > MAX_ENTRIES;
-                }
-            };
-        }
-
-        public void addConnection(String ip) {
-            connections.put(ip, Instant.now());
-        }
-
-        public boolean hasRecentlyConnected(String ip) {
-            Instant lastConnection = connections.get(ip);
-            if (lastConnection == null) return false;
-            return lastConnection.plusSeconds(300).isAfter(Instant.now()); // 5 minutes threshold
-        }
-    }
+    private static final int BUFFER_SIZE = Protocol.MAX_PACKET_SIZE;
+    public static final int DEFAULT_ROOM = 0;
+    private static final int MAX_ROOMS = 256;
+    private static final long ROOM_IDLE_TIMEOUT_NANOS = 60_000_000_000L; // Reclaim rooms empty for a minute
+    private static final long HOUSEKEEPING_INTERVAL_NANOS = 1_000_000_000L;
+    private static final long SENDER_REPORT_INTERVAL_NANOS = 10_000_000_000L;
+    // Socket writes happen on these threads, room workers only enqueue
+    private static final int SENDER_THREADS = Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors() / 2));
+    private static final int WORKER_THREADS = Math.max(1, Runtime.getRuntime().availableProcessors() - SENDER_THREADS - 1);
+    // Prometheus endpoint on localhost, off unless a port is given. There is no default
+    // port: the usual exporter ports are likely to be taken by node_exporter and friends.
+    private static final int METRICS_PORT = Integer.getInteger("justvibes.metricsPort", 0);
+    // One match log per room goes here; recording is off unless a directory is given.
+    // Once finished logs add up to more than the limit the oldest are deleted.
+    private static final String RECORD_DIR = System.getProperty("justvibes.recordDir", "");
+    private static final long RECORD_MAX_BYTES = Long.getLong("justvibes.recordMaxMegabytes", 1024L) * 1024 * 1024;
+    // Career leaderboard files go here, an empty value keeps scores in memory only
+    private static final String DATA_DIR = System.getProperty("justvibes.dataDir", "data");
+
+    private final DatagramChannel channel;
+    private final Selector selector;
+    private final OutboundSender sender;
+    private final ServerMetrics metrics = new ServerMetrics();
+    private final MatchRecorder recorder = RECORD_DIR.isEmpty() ? null : new MatchRecorder(Paths.get(RECORD_DIR), RECORD_MAX_BYTES);
+    private final Leaderboard leaderboard = openLeaderboard();
+    private final ByteBuffer receiveBuffer = ByteBuffer.allocate(BUFFER_SIZE);
+    private final PacketReader reader = new PacketReader(receiveBuffer);
+    private volatile boolean running = true;
+    private final List<RoomWorker> workers = new ArrayList<>();
+    private final Map<Integer, GameRoom> rooms = new ConcurrentHashMap<>();
+    // Open-addressed copy of rooms for the receive thread, rebuilt whenever a room is
+    // created or destroyed, so routing a datagram never boxes its room id
+    private volatile GameRoom[] roomIndex = new GameRoom[1];
+    // Destroyed rooms waiting to be reused, so a busy server does not rebuild them
+    private final Deque<GameRoom> idleRooms = new ArrayDeque<>();
+    private long nextHousekeeping;
+    private long nextSenderReport;
+    private long reportedDrops = 0;
 
     public GameServer() throws IOException {
-        socket = new DatagramSocket(PORT);
-        System.out.println("[Server] Started on port " + PORT);
-        System.out.println("[Server] State sync interval set to " + STATE_UPDATE_INTERVAL + " seconds");
-        
-        // Initialize managers
-        respawnManager = new RespawnManager(respawnData -> {
-            PlayerData player = players.get(respawnData.playerId);
-            if (player != null) {
-                float[] spawnPoint = getRandomSpawnPoint();
-                player.x = spawnPoint[0];
-                player.y = spawnPoint[1];
-                broadcastRespawn(respawnData.playerId, spawnPoint[0], spawnPoint[1]);
-            }
-        });
-        this.scoreManager = new ScoreManager();
-        this.recentConnections = new RecentConnections();
-    }
-
-    private float[] getRandomSpawnPoint() {
-        // Define road positions
-        int[] horizontalRoads = {GAME_HEIGHT/3, 2*GAME_HEIGHT/3};
-        int[] verticalRoads = {GAME_WIDTH/3, 2*GAME_WIDTH/3};
-        
-        float x, y;
-        boolean validPosition;
-        
-        do {
-            // Generate random position
-            x = random.nextFloat() * GAME_WIDTH;
-            y = random.nextFloat() * GAME_HEIGHT;
-            
-            validPosition = true;
-            
-            // Check if position is on a road
-            for (int roadY : horizontalRoads) {
-                if (Math.abs(y - roadY) < 50) { // Road width is 100
-                    validPosition = false;
-                    break;
-                }
-            }
-            
-            if (validPosition) {
-                for (int roadX : verticalRoads) {
-                    if (Math.abs(x - roadX) < 50) {
-                        validPosition = false;
-                        break;
-                    }
-                }
-            }
-            
-        } while (!validPosition);
-        
-        return new float[]{x, y};
+        channel = DatagramChannel.open();
+        channel.bind(new InetSocketAddress(PORT));
+        channel.configureBlocking(false);
+        selector = Selector.open();
+        channel.register(selector, SelectionKey.OP_READ);
+        sender = new OutboundSender(channel, SENDER_THREADS, OutboundSender.OverflowPolicy.DROP_OLDEST);
+        for (int i = 0; i < WORKER_THREADS; i++) {
+            workers.add(new RoomWorker("RoomWorker-" + i));
+        }
+        registerMetrics();
+        System.out.println("[Server] Started on port " + PORT + " with " + WORKER_THREADS + " room workers");
+        createRoom(DEFAULT_ROOM);
     }
 
     public void start() {
         Thread serverThread = new Thread(this::serverLoop);
+        metrics.registerMBean();
+        if (METRICS_PORT > 0) {
+            try {
+                metrics.startHttp(METRICS_PORT);
+            } catch (IOException e) {
+                System.err.println("[Server] Could not start metrics endpoint: " + e.getMessage());
+            }
+        }
+        sender.start();
+        if (recorder != null) {
+            recorder.start();
+        }
+        if (leaderboard != null) {
+            leaderboard.start();
+        }
+        workers.forEach(Thread::start);
         serverThread.start();
-        respawnManager.start();
     }
 
     private void serverLoop() {
-        long lastUpdateTime = System.nanoTime();
-        long lastSyncTime = System.nanoTime();
+        long now = System.nanoTime();
+        nextHousekeeping = now + HOUSEKEEPING_INTERVAL_NANOS;
+        nextSenderReport = now + SENDER_REPORT_INTERVAL_NANOS;
         System.out.println("[Server] Server loop started");
         
         while (running) {
             try {
-                // Calculate delta time
-                long currentTime = System.nanoTime();
-                float deltaTime = (currentTime - lastUpdateTime) / 1_000_000_000.0f;
-                lastUpdateTime = currentTime;
-                
-                // Update state broadcast timer
-                stateUpdateTimer += deltaTime;
-                if (stateUpdateTimer >= STATE_UPDATE_INTERVAL) {
-                    System.out.println("[Server] State update timer triggered. Time since last sync: " + 
-                                     String.format("%.2f", (currentTime - lastSyncTime) / 1_000_000_000.0f) + "s");
-                    System.out.println("[Server] Number of connected players: " + players.size());
-                    System.out.println("[Server] Current players: " + String.join(", ", players.keySet()));
-                    broadcastFullState();
-                    stateUpdateTimer = 0;
-                    lastSyncTime = currentTime;
-                    System.out.println("[Server] Sync complete at: " + System.currentTimeMillis());
+                // Rooms keep their own tick deadlines, this thread only waits for datagrams
+                long waitMillis = (nextHousekeeping - System.nanoTime()) / 1_000_000L;
+                if (waitMillis > 0) {
+                    selector.select(waitMillis);
+                } else {
+                    selector.selectNow();
                 }
-                
-                // Handle incoming packets
-                DatagramPacket packet = new DatagramPacket(receiveBuffer, receiveBuffer.length);
-                if (socket.isBound() && !socket.isClosed()) {
-                    try {
-                        socket.receive(packet);
-                        String message = new String(packet.getData(), 0, packet.getLength());
-                        handlePacket(packet);
-                    } catch (IOException e) {
-                        if (running) {
-                            System.err.println("[Server] Error receiving packet: " + e.getMessage());
-                        }
-                    }
+                selector.selectedKeys().clear();
+
+                // Drain every pending datagram, not just one per iteration
+                drainPackets();
+
+                now = System.nanoTime();
+                if (now - nextHousekeeping >= 0) {
+                    reapIdleRooms(now);
+                    nextHousekeeping = now + HOUSEKEEPING_INTERVAL_NANOS;
+                }
+                if (now - nextSenderReport >= 0) {
+                    reportOutboundDrops();
+                    reportRoomStats();
+                    nextSenderReport = now + SENDER_REPORT_INTERVAL_NANOS;
                 }
-                
-                // Small sleep to prevent CPU overuse
-                Thread.sleep(16); // Roughly 60 updates per second
             } catch (Exception e) {
                 if (running) {
                     System.err.println("[Server] Error in server loop: " + e.getMessage());
@@ -173,282 +142,250 @@ public class GameServer {
         }
     }
 
-    private void handlePacket(DatagramPacket packet) {
-        String message = new String(packet.getData(), 0, packet.getLength());
-        String[] parts = message.split("\\|");
-        String clientKey = packet.getAddress().getHostAddress() + ":" + packet.getPort();
-
-        if (parts[0].equals("JOIN")) {
-            handleJoin(clientKey, packet.getAddress(), packet.getPort());
-        } else if (parts[0].equals("POS")) {
-            handlePosition(clientKey, parts);
-        } else if (parts[0].equals("SHOOT")) {
-            handleShoot(clientKey, parts);
-        } else if (parts[0].equals("DEATH")) {
-            handleDeath(clientKey);
-        } else if (parts[0].equals("DISCONNECT")) {
-            handleDisconnect(clientKey);
-        } else if (parts[0].equals("DAMAGE")) {
-            handleDamage(clientKey, parts);
+    private void drainPackets() {
+        while (running) {
+            SocketAddress from;
+            try {
+                receiveBuffer.clear();
+                from = channel.receive(receiveBuffer);
+            } catch (IOException e) {
+                if (running) {
+                    System.err.println("[Server] Error receiving packet: " + e.getMessage());
+                }
+                return;
+            }
+            if (from == null) return; // Nothing left to read
+            receiveBuffer.flip();
+            route((InetSocketAddress) from);
         }
     }
 
-    private String generatePlayerId(String clientKey) {
-        // Generate a random number between 1000 and 9999
-        int randomNum = 1000 + random.nextInt(9000);
-        return clientKey + "_" + randomNum;
-    }
+    private void route(InetSocketAddress from) {
+        byte type;
+        int roomId;
+        try {
+            type = reader.readHeader();
+            roomId = reader.readVarInt();
+        } catch (RuntimeException e) {
+            return; // Truncated or malformed packet, drop it
+        }
+        receiveBuffer.rewind();
+        metrics.recordInbound(type, receiveBuffer.remaining());
 
-    private void handleJoin(String clientKey, InetAddress address, int port) {
-        String ipAddress = address.getHostAddress();
-        
-        // Check if this IP has connected recently
-        if (recentConnections.hasRecentlyConnected(ipAddress)) {
-            System.out.println("Warning: Rapid reconnection attempt from " + ipAddress);
-            // You could add additional logic here, like rate limiting
+        GameRoom room = findRoom(roomId);
+        if (room == null && type == Protocol.JOIN) {
+            room = createRoom(roomId);
         }
-        
-        recentConnections.addConnection(ipAddress);
-        float[] spawnPoint = getRandomSpawnPoint();
-        String playerId = generatePlayerId(clientKey);
-        
-        PlayerData newPlayer = new PlayerData(address, port, spawnPoint[0], spawnPoint[1]);
-        players.put(playerId, newPlayer);
-        clientToPlayerId.put(clientKey, playerId);
-        
-        // Send the new player their ID and spawn position
-        String initialMessage = "JOIN|" + playerId + "|" + spawnPoint[0] + "|" + spawnPoint[1];
-        sendToClient(initialMessage, address, port);
-        
-        // Notify new player about existing players
-        for (Map.Entry<String, PlayerData> entry : players.entrySet()) {
-            String existingPlayerId = entry.getKey();
-            if (!existingPlayerId.equals(playerId)) {
-                PlayerData existingPlayer = entry.getValue();
-                String joinMessage = "JOIN|" + existingPlayerId + "|" + existingPlayer.x + "|" + existingPlayer.y;
-                sendToClient(joinMessage, address, port);
-            }
+        if (room != null && !room.deliver(receiveBuffer, from)) {
+            metrics.recordInboundDropped();
         }
-        
-        // Broadcast new player to all others
-        broadcastPlayerJoined(playerId);
-        scoreManager.addPlayer(playerId);
-        
-        // Broadcast scores to existing players immediately
-        broadcastScoresToAllExcept(playerId);
-        
-        // Send scores to the new player after a delay to ensure they're ready
-        new Thread(() -> {
-            try {
-                Thread.sleep(1000); // Wait 1 second
-                sendScoresToPlayer(playerId);
-            } catch (InterruptedException e) {
-                // Silent fail
-            }
-        }).start();
     }
 
-    private void sendToClient(String message, InetAddress address, int port) {
-        try {
-            byte[] buffer = message.getBytes();
-            DatagramPacket packet = new DatagramPacket(buffer, buffer.length, address, port);
-            socket.send(packet);
-        } catch (IOException e) {
-            // Silent fail
+    /**
+     * Creates (or reuses) a room under the given id and pins it to the least busy
+     * worker. Returns the existing room if the id is taken, or null if the server
+     * is at capacity.
+     */
+    public synchronized GameRoom createRoom(int roomId) {
+        GameRoom existing = rooms.get(roomId);
+        if (existing != null) return existing;
+        if (rooms.size() >= MAX_ROOMS) {
+            System.out.println("[Server] Room limit reached, refusing room " + roomId);
+            return null;
         }
-    }
 
-    private void handlePosition(String clientKey, String[] parts) {
-        if (parts.length < 4) return;
-        String playerId = parts[1];
-        float x = Float.parseFloat(parts[2]);
-        float y = Float.parseFloat(parts[3]);
-        
-        String senderPlayerId = clientToPlayerId.get(clientKey);
-        if (senderPlayerId != null && senderPlayerId.equals(playerId)) {
-            PlayerData player = players.get(playerId);
-            if (player != null) {
-                player.x = x;
-                player.y = y;
-                // Broadcast to all players except the sender
-                broadcastPlayerPosition(playerId, x, y, clientKey);
+        GameRoom room = idleRooms.poll();
+        if (room == null) {
+            room = new GameRoom(roomId, sender, metrics, recorder, leaderboard);
+        } else {
+            room.reset(roomId);
+        }
+        RoomWorker worker = workers.get(0);
+        for (RoomWorker candidate : workers) {
+            if (candidate.getRoomCount() < worker.getRoomCount()) {
+                worker = candidate;
             }
         }
+        worker.addRoom(room);
+        rooms.put(roomId, room);
+        rebuildRoomIndex();
+        System.out.println("[Server] Created room " + roomId + " on " + worker.getName());
+        return room;
     }
 
-    private void handleShoot(String clientKey, String[] parts) {
-        if (parts.length >= 3) {
-            String playerId = clientToPlayerId.get(clientKey);
-            if (playerId != null) {
-                PlayerData player = players.get(playerId);
-                if (player != null) {
-                    float dirX = Float.parseFloat(parts[1]);
-                    float dirY = Float.parseFloat(parts[2]);
-                    String bulletId = playerId + "_" + System.currentTimeMillis();
-                    bulletOwners.put(bulletId, playerId);
-                    broadcastShot(playerId, player.x, player.y, dirX, dirY, bulletId);
-                }
+    /**
+     * Closes a room: its players are told the match is over and the room goes back
+     * to the pool once its worker has let go of it.
+     */
+    public synchronized void destroyRoom(int roomId) {
+        GameRoom room = rooms.remove(roomId);
+        if (room == null) return;
+        rebuildRoomIndex();
+
+        sendShutdown(room);
+        room.runOnRoomThread(() -> {
+            room.getWorker().removeRoom(room);
+            room.closeRecording();
+            synchronized (this) {
+                idleRooms.add(room);
             }
-        }
+        });
+        System.out.println("[Server] Destroyed room " + roomId);
     }
 
-    private void handleDeath(String clientKey) {
-        System.out.println("Handling death for client: " + clientKey);
-        String playerId = clientToPlayerId.get(clientKey);
-        if (playerId != null) {
-            PlayerData player = players.get(playerId);
-            if (player != null) {
-                // Add player to respawn queue
-                respawnManager.addToRespawnQueue(playerId);
-                // Broadcast death to all clients
-                broadcastDeath(playerId);
-                scoreManager.addKill(playerId);
-                broadcastScores();
-                
-                if (scoreManager.hasWinner()) {
-                    broadcastGameOver(scoreManager.getWinner());
-                    // Reset after a delay
-                    new Thread(() -> {
-                        try {
-                            Thread.sleep(5000);
-                            scoreManager.reset();
-                            broadcastScores();
-                        } catch (InterruptedException e) {
-                            // Silent fail
-                        }
-                    }).start();
-                }
+    private static Leaderboard openLeaderboard() {
+        if (DATA_DIR.isEmpty()) return null;
+        try {
+            Leaderboard leaderboard = new Leaderboard(Paths.get(DATA_DIR));
+            for (Leaderboard.Career career : leaderboard.getTop(5)) {
+                System.out.println("[Server]   " + career.getName() + ": " + career.getKills() + " kills, "
+                    + career.getDeaths() + " deaths");
             }
+            return leaderboard;
+        } catch (IOException e) {
+            System.err.println("[Server] Could not load the leaderboard, career scores are off: " + e.getMessage());
+            return null;
         }
     }
 
-    private void handleDisconnect(String clientKey) {
-        String playerId = clientToPlayerId.get(clientKey);
-        if (playerId != null) {
-            // Remove from all data structures
-            players.remove(playerId);
-            clientToPlayerId.remove(clientKey);
-            
-            // Broadcast player disconnection to all other clients
-            broadcastPlayerDisconnected(playerId);
-            scoreManager.removePlayer(playerId);
-            broadcastScores();
+    private void registerMetrics() {
+        metrics.registerGauge("rooms", "Rooms currently hosted.", rooms::size);
+        metrics.registerGauge("players", "Connected players across all rooms.",
+            () -> sumRooms(GameRoom::getPlayerCount));
+        metrics.registerGauge("bullets", "Bullets in flight across all rooms.",
+            () -> sumRooms(GameRoom::getLiveBulletCount));
+        metrics.registerGauge("pending_timers", "Delayed actions waiting on room timer wheels.",
+            () -> sumRooms(GameRoom::getPendingTimerCount));
+        metrics.registerGauge("inbound_queue_depth", "Datagrams waiting for their room worker.",
+            () -> sumRooms(GameRoom::getInboundQueueDepth));
+        metrics.registerGauge("outbound_queue_depth", "Datagrams waiting for a sender thread.", sender::getQueueDepth);
+        metrics.registerCounter("outbound_datagrams_total", "Datagrams written to the socket.", sender::getSentCount);
+        metrics.registerCounter("outbound_dropped_total", "Datagrams dropped by full client outboxes.", sender::getDroppedCount);
+        if (recorder != null) {
+            metrics.registerCounter("recording_bytes_total", "Bytes appended to match logs.", recorder::getBytesWritten);
+            metrics.registerCounter("recording_dropped_ticks_total", "Ticks left out of match logs because no block was free.",
+                recorder::getDroppedTicks);
+            metrics.registerGauge("recording_queue_depth", "Match log blocks waiting for the writer thread.", recorder::getQueueDepth);
         }
+        if (leaderboard != null) {
+            metrics.registerGauge("leaderboard_players", "Players with a career on the leaderboard.", leaderboard::getPlayerCount);
+            metrics.registerGauge("leaderboard_pending_kills", "Kills waiting for the next leaderboard commit.", leaderboard::getPendingCount);
+            metrics.registerCounter("leaderboard_kills_committed_total", "Kills synced to the leaderboard log.",
+                leaderboard::getCommittedCount);
+            metrics.registerCollector(out -> leaderboard.getCommitDuration().writePrometheus(out,
+                "justvibes_leaderboard_commit_seconds", "Time to append and sync one group commit."));
+        }
+        metrics.registerCollector(out -> {
+            StringBuilder rtt = new StringBuilder();
+            StringBuilder loss = new StringBuilder();
+            StringBuilder limited = new StringBuilder();
+            for (GameRoom room : rooms.values()) {
+                room.collectClientMetrics(rtt, loss, limited);
+            }
+            out.append("# HELP justvibes_client_rtt_seconds Smoothed round trip time per client.\n")
+                .append("# TYPE justvibes_client_rtt_seconds gauge\n").append(rtt)
+                .append("# HELP justvibes_client_snapshot_loss_ratio Share of snapshots never acknowledged per client.\n")
+                .append("# TYPE justvibes_client_snapshot_loss_ratio gauge\n").append(loss)
+                .append("# HELP justvibes_client_rate_limited_total Datagrams dropped for exceeding the client's rate budget, by message class.\n")
+                .append("# TYPE justvibes_client_rate_limited_total counter\n").append(limited);
+        });
     }
 
-    private void handleDamage(String clientKey, String[] parts) {
-        if (parts.length < 3) return;
-        String bulletId = parts[1];
-        String shooterId = bulletOwners.get(bulletId);
-        
-        if (shooterId != null) {
-            String victimId = clientToPlayerId.get(clientKey);
-            if (victimId != null && !victimId.equals(shooterId)) {
-                scoreManager.addKill(shooterId);
-                broadcastScores();
-                bulletOwners.remove(bulletId); // Clean up bullet owner mapping
-                
-                if (scoreManager.hasWinner()) {
-                    broadcastGameOver(scoreManager.getWinner());
-                    // Reset after a delay
-                    new Thread(() -> {
-                        try {
-                            Thread.sleep(5000);
-                            scoreManager.reset();
-                            broadcastScores();
-                        } catch (InterruptedException e) {
-                            // Silent fail
-                        }
-                    }).start();
-                }
-            }
+    private long sumRooms(ToIntFunction<GameRoom> value) {
+        long total = 0;
+        for (GameRoom room : rooms.values()) {
+            total += value.applyAsInt(room);
         }
+        return total;
     }
 
-    private void broadcastPlayerJoined(String playerId) {
-        PlayerData player = players.get(playerId);
-        String message = "JOIN|" + playerId + "|" + player.x + "|" + player.y;
-        broadcast(message, null);
+    private GameRoom findRoom(int roomId) {
+        GameRoom[] index = roomIndex;
+        int mask = index.length - 1;
+        for (int slot = indexSlot(roomId, mask); ; slot = (slot + 1) & mask) {
+            GameRoom room = index[slot];
+            if (room == null || room.getId() == roomId) return room;
+        }
     }
 
-    private void broadcastPlayerPosition(String playerId, float x, float y, String excludeKey) {
-        String message = "POS|" + playerId + "|" + x + "|" + y;
-        broadcast(message, excludeKey);
+    // Called with the server lock held
+    private void rebuildRoomIndex() {
+        // Keep the table at most half full so probes stay short and always hit a gap
+        int capacity = Integer.highestOneBit(Math.max(1, rooms.size()) * 4 - 1);
+        GameRoom[] index = new GameRoom[capacity];
+        int mask = capacity - 1;
+        for (GameRoom room : rooms.values()) {
+            int slot = indexSlot(room.getId(), mask);
+            while (index[slot] != null) {
+                slot = (slot + 1) & mask;
+            }
+            index[slot] = room;
+        }
+        roomIndex = index;
     }
 
-    private void broadcastSync(String playerId, float x, float y) {
-        String message = "SYNC|" + playerId + "|" + x + "|" + y;
-        broadcast(message, null);
+    private static int indexSlot(int roomId, int mask) {
+        int hash = roomId * 0x9E3779B9;
+        return (hash ^ (hash >>> 16)) & mask;
     }
 
-    private void broadcastShot(String playerId, float x, float y, float dirX, float dirY, String bulletId) {
-        String message = "SHOOT|" + playerId + "|" + x + "|" + y + "|" + dirX + "|" + dirY + "|" + bulletId;
-        broadcast(message, null);
+    public int getRoomCount() {
+        return rooms.size();
     }
 
-    private void broadcastDeath(String playerId) {
-        @SuppressWarnings("unused")
-        PlayerData player = players.get(playerId);
-        String message = "DEATH|" + playerId;
-        broadcast(message, null);
+    private void reapIdleRooms(long now) {
+        for (GameRoom room : rooms.values()) {
+            if (room.getId() != DEFAULT_ROOM && room.getEmptyNanos(now) > ROOM_IDLE_TIMEOUT_NANOS) {
+                destroyRoom(room.getId());
+            }
+        }
     }
 
-    private void broadcastPlayerDisconnected(String playerId) {
-        String message = "DISCONNECT|" + playerId;
-        broadcast(message, null);
+    private void reportOutboundDrops() {
+        long drops = sender.getDroppedCount();
+        if (drops != reportedDrops) {
+            System.out.println("[Server] Outbound queue depth: " + sender.getQueueDepth()
+                + ", datagrams dropped in the last interval: " + (drops - reportedDrops));
+            reportedDrops = drops;
+        }
     }
 
-    private void broadcastRespawn(String playerId, float x, float y) {
-        String message = "RESPAWN|" + playerId + "|" + x + "|" + y;
-        broadcast(message, null);
+    private void reportRoomStats() {
+        int timers = 0;
+        int liveBullets = 0;
+        int peakBullets = 0;
+        for (GameRoom room : rooms.values()) {
+            timers += room.getPendingTimerCount();
+            liveBullets += room.getLiveBulletCount();
+            peakBullets = Math.max(peakBullets, room.getPeakBulletCount());
+        }
+        if (timers > 0 || liveBullets > 0) {
+            System.out.println("[Server] Pending timers: " + timers + ", bullets in flight: " + liveBullets
+                + " (peak in one room: " + peakBullets + ") across " + rooms.size() + " rooms");
+        }
     }
 
-    private void broadcastScores() {
-        JSONObject message = new JSONObject();
-        message.put("type", "scores");
-        message.put("scores", new JSONObject(scoreManager.getScores()));
-        message.put("winner", scoreManager.getWinner());
-        broadcast(message.toString(), null);
+    public int getPendingTimerCount() {
+        int pending = 0;
+        for (GameRoom room : rooms.values()) {
+            pending += room.getPendingTimerCount();
+        }
+        return pending;
     }
 
-    private void broadcastGameOver(String winnerId) {
-        JSONObject message = new JSONObject();
-        message.put("type", "gameOver");
-        message.put("winner", winnerId);
-        broadcast(message.toString(), null);
+    public int getOutboundQueueDepth() {
+        return sender.getQueueDepth();
     }
 
-    private void broadcast(String message, String excludeKey) {
-        byte[] buffer = message.getBytes();
-        players.forEach((key, player) -> {
-            if (!key.equals(excludeKey)) {
-                try {
-                    DatagramPacket packet = new DatagramPacket(
-                        buffer, buffer.length, player.address, player.port);
-                    socket.send(packet);
-                } catch (IOException e) {
-                    // Silent fail
-                }
+    // Bypasses the batches and sender queues, the room may not get to another tick
+    private void sendShutdown(GameRoom room) {
+        ByteBuffer message = new PacketWriter().begin(Protocol.SHUTDOWN).toBuffer();
+        for (InetSocketAddress address : room.getPlayerAddresses()) {
+            try {
+                channel.send(message.duplicate(), address);
+            } catch (IOException e) {
+                // Silent fail
             }
-        });
-    }
-
-    private void broadcastScoresToAllExcept(String excludedPlayerId) {
-        JSONObject message = new JSONObject();
-        message.put("type", "scores");
-        message.put("scores", new JSONObject(scoreManager.getScores()));
-        message.put("winner", scoreManager.getWinner());
-        broadcast(message.toString(), excludedPlayerId);
-    }
-
-    private void sendScoresToPlayer(String playerId) {
-        PlayerData player = players.get(playerId);
-        if (player != null) {
-            JSONObject message = new JSONObject();
-            message.put("type", "scores");
-            message.put("scores", new JSONObject(scoreManager.getScores()));
-            message.put("winner", scoreManager.getWinner());
-            sendToClient(message.toString(), player.address, player.port);
         }
     }
 
@@ -457,16 +394,39 @@ public class GameServer {
             System.out.println("Server shutting down...");
             // Send shutdown message to all clients
             try {
-                String message = "SHUTDOWN";
-                broadcast(message, null);
+                rooms.values().forEach(this::sendShutdown);
                 // Give clients a small window to receive the shutdown message
                 Thread.sleep(100);
             } catch (Exception e) {
                 // Silent fail
             }
             running = false;
-            respawnManager.stop();
-            socket.close();
+            workers.forEach(RoomWorker::shutdown);
+            // Rooms close their match logs on stop, which must not race their last tick
+            for (RoomWorker worker : workers) {
+                try {
+                    worker.join(1000);
+                } catch (InterruptedException e) {
+                    // Silent fail
+                }
+            }
+            rooms.values().forEach(GameRoom::stop);
+            idleRooms.forEach(GameRoom::stop);
+            if (recorder != null) {
+                recorder.stop();
+            }
+            if (leaderboard != null) {
+                leaderboard.stop();
+            }
+            sender.stop();
+            metrics.stop();
+            selector.wakeup();
+            try {
+                selector.close();
+                channel.close();
+            } catch (IOException e) {
+                // Silent fail
+            }
             System.out.println("Server stopped.");
         }
     }
@@ -479,62 +439,4 @@ public class GameServer {
             // Silent fail
         }
     }
-
-    private static class PlayerData {
-        InetAddress address;
-        int port;
-        float x, y;
-        boolean isDead;
-
-        PlayerData(InetAddress address, int port, float x, float y) {
-            this.address = address;
-            this.port = port;
-            this.x = x;
-            this.y = y;
-            this.isDead = false;
-        }
-    }
-
-    private void broadcastFullState() {
-        // Create a SYNC message with all players
-        StringBuilder syncMessage = new StringBuilder("SYNC");
-        players.forEach((playerId, playerData) -> {
-            syncMessage.append("|").append(playerId)
-                      .append(",").append(playerData.x)
-                      .append(",").append(playerData.y)
-                      .append(",").append(playerData.isDead ? "1" : "0");
-        });
-        String finalMessage = syncMessage.toString();
-        System.out.println("[Server] Broadcasting sync message: " + finalMessage);
-        System.out.println("[Server] Number of players in sync: " + (finalMessage.split("\\|").length - 1));
-        broadcast(finalMessage, null);
-        
-        // Send the JSON state update for other game state
-        JSONObject state = new JSONObject();
-        state.put("type", "FULL_STATE");
-        
-        // Add bullet states
-        JSONObject bulletsState = new JSONObject();
-        bulletOwners.forEach((bulletId, ownerId) -> {
-            JSONObject bulletState = new JSONObject();
-            bulletState.put("ownerId", ownerId);
-            bulletsState.put(bulletId, bulletState);
-        });
-        state.put("bullets", bulletsState);
-        
-        // Add player states
-        JSONObject playersState = new JSONObject();
-        players.forEach((playerId, playerData) -> {
-            JSONObject playerState = new JSONObject();
-            playerState.put("x", playerData.x);
-            playerState.put("y", playerData.y);
-            playerState.put("isDead", playerData.isDead);
-            playersState.put(playerId, playerState);
-        });
-        state.put("players", playersState);
-        
-        // Broadcast the full state to all clients
-        broadcast(state.toString(), null);
-        System.out.println("[Server] Full state update sent with " + players.size() + " players and " + bulletOwners.size() + " bullets");
-    }
-} 
\ No newline at end of file
+}
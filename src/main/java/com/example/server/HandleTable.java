@@ -0,0 +1,133 @@
+package com.example.server;
+
+import java.util.Arrays;
+
+/**
+ * Fixed-capacity table addressed by compact integer handles. A handle packs a
+ * 16 bit slot index with the slot's generation, which is bumped every time the
+ * slot is freed, so a handle kept after its entry was removed never resolves to
+ * whoever reuses the slot. Handles are always positive and never 0, which
+ * callers can use as "no entity".
+ *
+ * Live entries are also kept densely packed so they can be walked by index
+ * without an iterator. Only the owning room's worker may modify the table.
+ */
+public class HandleTable<T> {
+    public static final int MAX_CAPACITY = 1 << 16;
+    private static final int SLOT_BITS = 16;
+    private static final int SLOT_MASK = MAX_CAPACITY - 1;
+    private static final int GENERATION_MASK = 0x7FFF; // Keeps handles positive
+
+    private final Object[] entries;
+    private final int[] generations;
+    private final int[] freeSlots;
+    private int freeCount;
+    // Live entries packed at the front, and where each slot sits in that list
+    private final Object[] dense;
+    private final int[] denseSlots;
+    private final int[] denseIndex;
+    private volatile int size;
+
+    public HandleTable(int capacity) {
+        if (capacity < 1 || capacity > MAX_CAPACITY) {
+            throw new IllegalArgumentException("Capacity must be between 1 and " + MAX_CAPACITY);
+        }
+        entries = new Object[capacity];
+        generations = new int[capacity];
+        Arrays.fill(generations, 1);
+        freeSlots = new int[capacity];
+        // Hand out low slots first
+        for (int i = 0; i < capacity; i++) {
+            freeSlots[i] = capacity - 1 - i;
+        }
+        freeCount = capacity;
+        dense = new Object[capacity];
+        denseSlots = new int[capacity];
+        denseIndex = new int[capacity];
+    }
+
+    public static int slot(int handle) {
+        return handle & SLOT_MASK;
+    }
+
+    /**
+     * Stores the value and returns its handle, or 0 if the table is full.
+     */
+    public int add(T value) {
+        if (freeCount == 0) return 0;
+        int slot = freeSlots[--freeCount];
+        entries[slot] = value;
+        int index = size;
+        dense[index] = value;
+        denseSlots[index] = slot;
+        denseIndex[slot] = index;
+        size = index + 1;
+        return generations[slot] << SLOT_BITS | slot;
+    }
+
+    @SuppressWarnings("unchecked")
+    public T get(int handle) {
+        int slot = handle & SLOT_MASK;
+        if (handle <= 0 || slot >= entries.length || generations[slot] != handle >>> SLOT_BITS) {
+            return null;
+        }
+        return (T) entries[slot];
+    }
+
+    /**
+     * Removes the entry and retires its handle. Moves the last live entry into
+     * the freed position of the dense list, so removing while walking by index
+     * must revisit the current index.
+     */
+    public T remove(int handle) {
+        T value = get(handle);
+        if (value == null) return null;
+        int slot = handle & SLOT_MASK;
+        entries[slot] = null;
+        generations[slot] = (generations[slot] + 1) & GENERATION_MASK;
+        if (generations[slot] == 0) generations[slot] = 1;
+        freeSlots[freeCount++] = slot;
+
+        int index = denseIndex[slot];
+        int last = size - 1;
+        dense[index] = dense[last];
+        denseSlots[index] = denseSlots[last];
+        denseIndex[denseSlots[index]] = index;
+        dense[last] = null;
+        size = last;
+        return value;
+    }
+
+    /**
+     * Returns the live entry at the given position of the dense list, 0 to size() - 1.
+     */
+    @SuppressWarnings("unchecked")
+    public T valueAt(int index) {
+        return (T) dense[index];
+    }
+
+    /**
+     * Safe to read from any thread.
+     */
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public int capacity() {
+        return entries.length;
+    }
+
+    /**
+     * Removes every entry, retiring all outstanding handles.
+     */
+    public void clear() {
+        while (size > 0) {
+            int slot = denseSlots[size - 1];
+            remove(generations[slot] << SLOT_BITS | slot);
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package com.example.server;
+
+import com.example.protocol.Protocol;
+
+/**
+ * Per-session token buckets, one per class of client message. Each bucket is
+ * kept as the time its next token is due (the generic cell rate algorithm), so
+ * a check is a comparison and an add with no refill arithmetic. Only the
+ * server's receive thread checks; the drop counters are read by the metrics
+ * endpoint.
+ */
+public class InboundLimiter {
+    public static final int MOVEMENT = 0;
+    public static final int COMBAT = 1;
+    public static final int CONTROL = 2;
+    private static final String[] CLASS_NAMES = {"movement", "combat", "control"};
+
+    // Sustained rate per second and burst size per class. Clients send positions
+    // 10 times a second, shoot at most twice a second and ack 20 snapshots a second.
+    private static final int[] RATES = {30, 5, 40};
+    private static final int[] BURSTS = {30, 5, 40};
+    private static final long[] INTERVALS = new long[RATES.length];
+    private static final long[] TOLERANCES = new long[RATES.length];
+    // No spacing and no limit on how far ahead a bucket may run
+    private static final long[] NO_INTERVALS = new long[RATES.length];
+    private static final long[] NO_TOLERANCES = new long[RATES.length];
+
+    static {
+        for (int i = 0; i < RATES.length; i++) {
+            INTERVALS[i] = 1_000_000_000L / RATES[i];
+            TOLERANCES[i] = INTERVALS[i] * (BURSTS[i] - 1);
+            NO_TOLERANCES[i] = Long.MAX_VALUE;
+        }
+    }
+
+    private final long[] intervals;
+    private final long[] tolerances;
+
+    // When each bucket has its next token; a message is allowed until this is a burst ahead of now
+    private final long[] nextTokenAt = new long[RATES.length];
+    // Only written by the receive thread, the metrics endpoint may read a slightly stale count
+    private final long[] dropped = new long[RATES.length];
+
+    public InboundLimiter(long now) {
+        this(now, INTERVALS, TOLERANCES);
+    }
+
+    private InboundLimiter(long now, long[] intervals, long[] tolerances) {
+        this.intervals = intervals;
+        this.tolerances = tolerances;
+        for (int i = 0; i < nextTokenAt.length; i++) {
+            nextTokenAt[i] = now;
+        }
+    }
+
+    /**
+     * A limiter that lets everything through, for fixtures and benchmarks that
+     * replay clients far faster than any real one.
+     */
+    public static InboundLimiter unlimited(long now) {
+        return new InboundLimiter(now, NO_INTERVALS, NO_TOLERANCES);
+    }
+
+    /**
+     * Takes a token for a message of the given type. Returns false, and counts
+     * the drop, if the session is over budget for that class.
+     */
+    public boolean tryAcquire(byte type, long now) {
+        int messageClass = classOf(type);
+        long next = Math.max(nextTokenAt[messageClass], now);
+        if (next - now > tolerances[messageClass]) {
+            dropped[messageClass]++;
+            return false;
+        }
+        nextTokenAt[messageClass] = next + intervals[messageClass];
+        return true;
+    }
+
+    public long getDropped(int messageClass) {
+        return dropped[messageClass];
+    }
+
+    public static int getClassCount() {
+        return CLASS_NAMES.length;
+    }
+
+    public static String getClassName(int messageClass) {
+        return CLASS_NAMES[messageClass];
+    }
+
+    private static int classOf(byte type) {
+        switch (type) {
+            case Protocol.POS:
+                return MOVEMENT;
+            case Protocol.SHOOT:
+                return COMBAT;
+            default:
+                return CONTROL;
+        }
+    }
+}
@@ -0,0 +1,447 @@
+package com.example.server;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.CRC32;
+
+/**
+ * Career kills and deaths by player name, kept across matches and restarts.
+ * Only players who picked a name have a career; guests do not, so the table
+ * grows with the number of names in use rather than with every join. A name
+ * is held by one live session at a time across every room.
+ *
+ * Rooms only queue kill events. A single writer thread drains whatever has
+ * queued up, appends it to a write-ahead log and syncs once for the whole
+ * batch (group commit), so a room never waits on the disk. Once the log grows
+ * past a threshold the table is written to a new snapshot file, swapped in
+ * atomically, and the log starts over. On startup the snapshot is loaded and
+ * every logged event after it is replayed; a torn record at the end of the log
+ * marks where the last crash happened and is cut off. A batch that fails to
+ * write is cut off the same way and retried, so nothing after it is lost.
+ *
+ * Log record: length, CRC32 of the rest, sequence, killer, victim. Snapshot:
+ * magic, last sequence, count, per player: name, kills, deaths, then a CRC32 of
+ * everything before it. Strings are a short byte length and UTF-8 bytes.
+ */
+public class Leaderboard {
+    private static final int SNAPSHOT_MAGIC = 0x4A564C42; // "JVLB"
+    private static final long COMPACT_THRESHOLD_BYTES = 1024 * 1024;
+    private static final long RETRY_MILLIS = 1000;
+    private static final int MAX_BATCH = 1024;
+    private static final int MAX_NAME_BYTES = 256;
+    private static final int MIN_RECORD_SIZE = 20; // Length, CRC, sequence and two empty names
+    private static final long MICROS = 1_000L;
+    private static final long MILLIS = 1_000_000L;
+
+    private final Path directory;
+    private final Path logPath;
+    private final Path snapshotPath;
+    private final Map<String, Career> careers = new ConcurrentHashMap<>();
+    // Names someone is playing under right now, in any room
+    private final Set<String> liveNames = ConcurrentHashMap.newKeySet();
+    private final BlockingQueue<KillEvent> pending = new LinkedBlockingQueue<>();
+    private final Histogram commitDuration = new Histogram(
+        100 * MICROS, 250 * MICROS, 500 * MICROS, MILLIS, 2 * MILLIS, 5 * MILLIS, 10 * MILLIS, 25 * MILLIS, 100 * MILLIS);
+    private final LongAdder committedEvents = new LongAdder();
+    private final Thread writer;
+    private final ByteBuffer batch = ByteBuffer.allocate(MAX_BATCH * (MIN_RECORD_SIZE + 2 * MAX_NAME_BYTES));
+    private final List<KillEvent> drained = new ArrayList<>(MAX_BATCH);
+    private final CRC32 crc = new CRC32();
+    private final FileChannel log;
+    private final long compactThreshold;
+    // Where the last committed record ends, the next batch is written here
+    private long logEnd;
+    private long sequence;
+    private long snapshotSequence;
+
+    /**
+     * Career totals for one name. Only the writer thread changes them.
+     */
+    public static class Career {
+        private final String name;
+        private volatile int kills;
+        private volatile int deaths;
+
+        Career(String name) {
+            this.name = name;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public int getKills() {
+            return kills;
+        }
+
+        public int getDeaths() {
+            return deaths;
+        }
+    }
+
+    private static class KillEvent {
+        final String killer;
+        final String victim;
+
+        KillEvent(String killer, String victim) {
+            this.killer = killer;
+            this.victim = victim;
+        }
+    }
+
+    // Handed to the writer to make it finish the queue and exit
+    private static final KillEvent STOP = new KillEvent("", "");
+
+    /**
+     * Loads the snapshot and replays the log from the given directory, creating
+     * it if needed.
+     */
+    public Leaderboard(Path directory) throws IOException {
+        this(directory, COMPACT_THRESHOLD_BYTES);
+    }
+
+    Leaderboard(Path directory, long compactThreshold) throws IOException {
+        this.compactThreshold = compactThreshold;
+        Files.createDirectories(directory);
+        this.directory = directory;
+        logPath = directory.resolve("leaderboard.wal");
+        snapshotPath = directory.resolve("leaderboard.snapshot");
+        loadSnapshot();
+        log = FileChannel.open(logPath, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        int replayed = replayLog();
+        System.out.println("[Server] Leaderboard loaded: " + careers.size() + " players, "
+            + replayed + " kills replayed from the log");
+        writer = new Thread(this::writeLoop, "Leaderboard");
+        writer.setDaemon(true);
+    }
+
+    public void start() {
+        writer.start();
+    }
+
+    /**
+     * Queues a kill for the log. Never blocks; the totals change once it is on disk.
+     * Either name may be null for a guest, whose side of the kill is not counted.
+     */
+    public void recordKill(String killer, String victim) {
+        pending.offer(new KillEvent(killer != null ? killer : "", victim != null ? victim : ""));
+    }
+
+    /**
+     * Reserves a career for a session that is joining. Returns false if another
+     * live session already plays under the name.
+     */
+    public boolean claim(String name) {
+        return liveNames.add(name);
+    }
+
+    /**
+     * Frees a name claimed by a session that has left.
+     */
+    public void release(String name) {
+        liveNames.remove(name);
+    }
+
+    public Career getCareer(String name) {
+        return careers.get(name);
+    }
+
+    /**
+     * The players with the most career kills, best first.
+     */
+    public List<Career> getTop(int limit) {
+        List<Career> top = new ArrayList<>(careers.values());
+        top.sort((a, b) -> b.kills != a.kills ? b.kills - a.kills : a.deaths - b.deaths);
+        return top.subList(0, Math.min(limit, top.size()));
+    }
+
+    public int getPlayerCount() {
+        return careers.size();
+    }
+
+    public int getPendingCount() {
+        return pending.size();
+    }
+
+    public long getCommittedCount() {
+        return committedEvents.sum();
+    }
+
+    public Histogram getCommitDuration() {
+        return commitDuration;
+    }
+
+    /**
+     * Commits everything queued so far and stops the writer.
+     */
+    public void stop() {
+        pending.offer(STOP);
+        try {
+            writer.join(5000);
+        } catch (InterruptedException e) {
+            // Silent fail
+        }
+    }
+
+    private void writeLoop() {
+        boolean stopping = false;
+        while (true) {
+            // A batch that failed to write is retried as it is before taking more
+            if (drained.isEmpty()) {
+                KillEvent first;
+                try {
+                    // Once stopping, only what is already queued is still written
+                    first = stopping ? pending.poll() : pending.take();
+                } catch (InterruptedException e) {
+                    break;
+                }
+                if (first == null) break;
+                drained.add(first);
+                // Whatever queued up while the last sync ran goes out in this one
+                pending.drainTo(drained, MAX_BATCH - 1);
+                if (drained.remove(STOP)) {
+                    stopping = true;
+                }
+            }
+            try {
+                commit();
+            } catch (IOException e) {
+                System.err.println("[Server] Leaderboard write failed, " + drained.size() + " kills kept for retry: "
+                    + e.getMessage());
+                // Nobody waits for a retry once stopping, the kills are lost either way
+                if (stopping) break;
+                try {
+                    Thread.sleep(RETRY_MILLIS);
+                } catch (InterruptedException interrupted) {
+                    break;
+                }
+                continue;
+            }
+            drained.clear();
+            try {
+                if (logEnd >= compactThreshold) {
+                    compact();
+                }
+            } catch (IOException e) {
+                System.err.println("[Server] Leaderboard compaction failed: " + e.getMessage());
+            }
+        }
+        try {
+            log.close();
+        } catch (IOException e) {
+            // Silent fail
+        }
+    }
+
+    private void commit() throws IOException {
+        if (drained.isEmpty()) return;
+        long start = System.nanoTime();
+        batch.clear();
+        for (KillEvent event : drained) {
+            encode(event, ++sequence);
+        }
+        batch.flip();
+        try {
+            // Bytes left behind by an earlier failed batch would sit in front of these records
+            if (log.size() > logEnd) {
+                log.truncate(logEnd);
+            }
+            long position = logEnd;
+            while (batch.hasRemaining()) {
+                position += log.write(batch, position);
+            }
+            log.force(false);
+        } catch (IOException e) {
+            // Cut off whatever part of the batch made it, the retry reuses its sequences
+            sequence -= drained.size();
+            try {
+                log.truncate(logEnd);
+            } catch (IOException truncateFailed) {
+                // Silent fail, the next attempt truncates first
+            }
+            throw e;
+        }
+        logEnd += batch.limit();
+        commitDuration.record(System.nanoTime() - start);
+        for (KillEvent event : drained) {
+            apply(event.killer, event.victim);
+        }
+        committedEvents.add(drained.size());
+    }
+
+    private void encode(KillEvent event, long eventSequence) {
+        int start = batch.position();
+        batch.position(start + 8);
+        batch.putLong(eventSequence);
+        putString(batch, event.killer);
+        putString(batch, event.victim);
+        int end = batch.position();
+        crc.reset();
+        crc.update(batch.array(), start + 8, end - start - 8);
+        batch.putInt(start, end - start);
+        batch.putInt(start + 4, (int) crc.getValue());
+    }
+
+    // An empty name is a guest's side of the kill
+    private void apply(String killer, String victim) {
+        if (!killer.isEmpty()) {
+            careers.computeIfAbsent(killer, Career::new).kills++;
+        }
+        if (!victim.isEmpty()) {
+            careers.computeIfAbsent(victim, Career::new).deaths++;
+        }
+    }
+
+    /**
+     * Writes the table to a fresh snapshot, swaps it in and empties the log. A
+     * crash in between leaves the old snapshot, or a log the new snapshot
+     * already covers, and both recover to the same table.
+     */
+    private void compact() throws IOException {
+        Path temporary = snapshotPath.resolveSibling(snapshotPath.getFileName() + ".tmp");
+        ByteBuffer snapshot = encodeSnapshot();
+        try (FileChannel file = FileChannel.open(temporary, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            while (snapshot.hasRemaining()) {
+                file.write(snapshot);
+            }
+            file.force(true);
+        }
+        Files.move(temporary, snapshotPath, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        // The rename must be on disk before the log is emptied, or a crash could
+        // bring back the old snapshot next to an empty log
+        syncDirectory();
+        snapshotSequence = sequence;
+        log.truncate(0);
+        log.force(true);
+        logEnd = 0;
+        System.out.println("[Server] Leaderboard compacted: " + careers.size() + " players up to kill " + sequence);
+    }
+
+    private void syncDirectory() throws IOException {
+        FileChannel channel;
+        try {
+            channel = FileChannel.open(directory, StandardOpenOption.READ);
+        } catch (IOException e) {
+            // Silent fail, some platforms cannot open a directory and order the rename themselves
+            return;
+        }
+        try (FileChannel dir = channel) {
+            dir.force(true);
+        }
+    }
+
+    private ByteBuffer encodeSnapshot() {
+        int size = 16;
+        for (Career career : careers.values()) {
+            size += 10 + career.name.getBytes(StandardCharsets.UTF_8).length;
+        }
+        ByteBuffer snapshot = ByteBuffer.allocate(size + 4);
+        snapshot.putInt(SNAPSHOT_MAGIC);
+        snapshot.putLong(sequence);
+        snapshot.putInt(careers.size());
+        for (Career career : careers.values()) {
+            putString(snapshot, career.name);
+            snapshot.putInt(career.kills);
+            snapshot.putInt(career.deaths);
+        }
+        crc.reset();
+        crc.update(snapshot.array(), 0, snapshot.position());
+        snapshot.putInt((int) crc.getValue());
+        snapshot.flip();
+        return snapshot;
+    }
+
+    private void loadSnapshot() throws IOException {
+        if (!Files.exists(snapshotPath)) return;
+        ByteBuffer snapshot = ByteBuffer.wrap(Files.readAllBytes(snapshotPath));
+        try {
+            crc.reset();
+            crc.update(snapshot.array(), 0, snapshot.limit() - 4);
+            if (snapshot.getInt(0) != SNAPSHOT_MAGIC || snapshot.getInt(snapshot.limit() - 4) != (int) crc.getValue()) {
+                throw new IOException("Corrupt leaderboard snapshot " + snapshotPath);
+            }
+            snapshot.position(4);
+            snapshotSequence = snapshot.getLong();
+            int count = snapshot.getInt();
+            for (int i = 0; i < count; i++) {
+                Career career = new Career(getString(snapshot));
+                career.kills = snapshot.getInt();
+                career.deaths = snapshot.getInt();
+                careers.put(career.name, career);
+            }
+            sequence = snapshotSequence;
+        } catch (RuntimeException e) {
+            throw new IOException("Corrupt leaderboard snapshot " + snapshotPath, e);
+        }
+    }
+
+    /**
+     * Applies every intact record newer than the snapshot and cuts the log off
+     * after the last one, so new records never land behind a torn write.
+     */
+    private int replayLog() throws IOException {
+        ByteBuffer data = ByteBuffer.allocate((int) log.size());
+        // Buffer positions match file offsets, read until the buffer is full
+        while (data.hasRemaining() && log.read(data, data.position()) >= 0) {
+            continue;
+        }
+        data.flip();
+        int replayed = 0;
+        int valid = 0;
+        while (data.remaining() >= MIN_RECORD_SIZE) {
+            int start = data.position();
+            int length = data.getInt(start);
+            if (length < MIN_RECORD_SIZE || length > data.remaining()) break;
+            crc.reset();
+            crc.update(data.array(), start + 8, length - 8);
+            if (data.getInt(start + 4) != (int) crc.getValue()) break;
+            data.position(start + 8);
+            long eventSequence = data.getLong();
+            String killer = getString(data);
+            String victim = getString(data);
+            if (eventSequence > snapshotSequence) {
+                apply(killer, victim);
+                sequence = eventSequence;
+                replayed++;
+            }
+            valid = start + length;
+            data.position(valid);
+        }
+        if (valid < data.limit()) {
+            System.out.println("[Server] Leaderboard log has a torn tail, dropping " + (data.limit() - valid) + " bytes");
+            log.truncate(valid);
+            log.force(true);
+        }
+        logEnd = valid;
+        return replayed;
+    }
+
+    private static void putString(ByteBuffer buffer, String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        int length = Math.min(bytes.length, MAX_NAME_BYTES);
+        buffer.putShort((short) length);
+        buffer.put(bytes, 0, length);
+    }
+
+    private static String getString(ByteBuffer buffer) {
+        int length = buffer.getShort() & 0xFFFF;
+        String value = new String(buffer.array(), buffer.position(), length, StandardCharsets.UTF_8);
+        buffer.position(buffer.position() + length);
+        return value;
+    }
+}
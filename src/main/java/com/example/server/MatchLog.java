@@ -0,0 +1,222 @@
+package com.example.server;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+import com.example.protocol.Protocol;
+
+/**
+ * Reads a match log written by {@link MatchRecorder}, block by block. The file
+ * is mapped read-only; {@link #seek} jumps to the nearest keyframe through the
+ * index at the end of the file. Only a log that was never closed, or whose
+ * index does not check out, is scanned block by block to rebuild it.
+ */
+public class MatchLog implements Closeable {
+    private final FileChannel file;
+    private final MappedByteBuffer data;
+    private final int roomId;
+    private final int tickRate;
+    private final long startMillis;
+    private final int end;
+    private long[] keyframeTicks = new long[16];
+    private int[] keyframeOffsets = new int[16];
+    private int keyframeCount;
+    private long firstTick = -1;
+    private long lastTick;
+    private int position = MatchRecorder.HEADER_SIZE;
+    private long blockTick;
+    private byte blockKind;
+    private ByteBuffer blockMessages;
+
+    private MatchLog(FileChannel file) throws IOException {
+        this.file = file;
+        if (file.size() > Integer.MAX_VALUE) {
+            throw new IOException("Match log too large to map");
+        }
+        data = file.map(FileChannel.MapMode.READ_ONLY, 0, file.size());
+        if (data.capacity() < MatchRecorder.HEADER_SIZE || data.getInt(0) != MatchRecorder.MAGIC) {
+            throw new IOException("Not a match log");
+        }
+        if (data.getShort(4) != MatchRecorder.FORMAT) {
+            throw new IOException("Unsupported match log format " + data.getShort(4));
+        }
+        if (data.get(6) != Protocol.VERSION) {
+            throw new IOException("Match log was recorded with protocol version " + data.get(6));
+        }
+        tickRate = data.get(7) & 0xFF;
+        roomId = data.getInt(8);
+        startMillis = data.getLong(16);
+        long indexOffset = data.getLong(MatchRecorder.INDEX_OFFSET_POSITION);
+        if (indexOffset >= MatchRecorder.HEADER_SIZE && indexOffset <= data.capacity() && readIndex((int) indexOffset)) {
+            end = (int) indexOffset;
+            // Only the blocks after the last keyframe are walked, for the last tick
+            int from = keyframeCount > 0 ? keyframeOffsets[keyframeCount - 1] : MatchRecorder.HEADER_SIZE;
+            if (scanBlocks(from, end, false) != end) {
+                throw new IOException("Corrupt block before offset " + end);
+            }
+        } else {
+            // Cut short by a crash, or the index is torn: stop at the first block that does not fit
+            keyframeCount = 0;
+            end = scanBlocks(MatchRecorder.HEADER_SIZE, data.capacity(), true);
+        }
+    }
+
+    public static MatchLog open(Path path) throws IOException {
+        FileChannel file = FileChannel.open(path, StandardOpenOption.READ);
+        try {
+            return new MatchLog(file);
+        } catch (IOException e) {
+            file.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Loads the keyframe index written when the log was closed. Returns false,
+     * leaving the log to be scanned, if any entry is out of order or does not
+     * point at a keyframe block with the same tick.
+     */
+    private boolean readIndex(int indexOffset) {
+        if (indexOffset + 4 > data.capacity()) return false;
+        int count = data.getInt(indexOffset);
+        if (count < 0 || count > (data.capacity() - indexOffset - 4) / 16) return false;
+        long[] ticks = new long[Math.max(count, 1)];
+        int[] offsets = new int[ticks.length];
+        int position = indexOffset + 4;
+        long previous = MatchRecorder.HEADER_SIZE - 1;
+        for (int i = 0; i < count; i++, position += 16) {
+            long tick = data.getLong(position);
+            long offset = data.getLong(position + 8);
+            if (offset <= previous || offset + MatchRecorder.BLOCK_HEADER_SIZE > indexOffset
+                || data.get((int) offset + 12) != MatchRecorder.KEYFRAME || data.getLong((int) offset + 4) != tick) {
+                return false;
+            }
+            ticks[i] = tick;
+            offsets[i] = (int) offset;
+            previous = offset;
+        }
+        keyframeTicks = ticks;
+        keyframeOffsets = offsets;
+        keyframeCount = count;
+        if (indexOffset > MatchRecorder.HEADER_SIZE) {
+            firstTick = data.getLong(MatchRecorder.HEADER_SIZE + 4);
+        }
+        return true;
+    }
+
+    /**
+     * Walks the block headers from the given offset up to limit, noting the tick
+     * range and, if asked, every keyframe on the way. Stops at the first block
+     * that does not fit, such as the empty tail of a log cut short, and returns
+     * where it stopped.
+     */
+    private int scanBlocks(int offset, int limit, boolean collectKeyframes) {
+        while (offset + MatchRecorder.BLOCK_HEADER_SIZE <= limit) {
+            int length = data.getInt(offset);
+            if (length < MatchRecorder.BLOCK_HEADER_SIZE || offset + length > limit) break;
+            long tick = data.getLong(offset + 4);
+            if (firstTick < 0) firstTick = tick;
+            lastTick = tick;
+            if (collectKeyframes && data.get(offset + 12) == MatchRecorder.KEYFRAME) {
+                if (keyframeCount == keyframeTicks.length) {
+                    keyframeTicks = Arrays.copyOf(keyframeTicks, keyframeCount * 2);
+                    keyframeOffsets = Arrays.copyOf(keyframeOffsets, keyframeCount * 2);
+                }
+                keyframeTicks[keyframeCount] = tick;
+                keyframeOffsets[keyframeCount] = offset;
+                keyframeCount++;
+            }
+            offset += length;
+        }
+        return offset;
+    }
+
+    /**
+     * Advances to the next block. Returns false at the end of the log.
+     */
+    public boolean next() {
+        if (position + MatchRecorder.BLOCK_HEADER_SIZE > end) return false;
+        int length = data.getInt(position);
+        blockTick = data.getLong(position + 4);
+        blockKind = data.get(position + 12);
+        blockMessages = data.slice(position + MatchRecorder.BLOCK_HEADER_SIZE, length - MatchRecorder.BLOCK_HEADER_SIZE);
+        position += length;
+        return true;
+    }
+
+    /**
+     * Positions the log so the next block is the last keyframe at or before the
+     * given tick, and returns that keyframe's tick. Rewinds to the start if there
+     * is no such keyframe.
+     */
+    public long seek(long tick) {
+        int low = 0;
+        int high = keyframeCount - 1;
+        int found = -1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (keyframeTicks[mid] <= tick) {
+                found = mid;
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        if (found < 0) {
+            position = MatchRecorder.HEADER_SIZE;
+            return firstTick;
+        }
+        position = keyframeOffsets[found];
+        return keyframeTicks[found];
+    }
+
+    public long getTick() {
+        return blockTick;
+    }
+
+    public boolean isKeyframe() {
+        return blockKind == MatchRecorder.KEYFRAME;
+    }
+
+    /**
+     * The current block's messages, laid out like the body of a BATCH datagram.
+     */
+    public ByteBuffer getMessages() {
+        return blockMessages.duplicate();
+    }
+
+    public int getRoomId() {
+        return roomId;
+    }
+
+    public int getTickRate() {
+        return tickRate;
+    }
+
+    public long getStartMillis() {
+        return startMillis;
+    }
+
+    public long getFirstTick() {
+        return firstTick;
+    }
+
+    public long getLastTick() {
+        return lastTick;
+    }
+
+    public int getKeyframeCount() {
+        return keyframeCount;
+    }
+
+    @Override
+    public void close() throws IOException {
+        file.close();
+    }
+}
@@ -0,0 +1,425 @@
+package com.example.server;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import com.example.protocol.Protocol;
+
+/**
+ * Writes one binary match log per room. Rooms copy every accepted input and
+ * emitted event into a pooled block during the tick and hand the block over at
+ * the end of it; a single writer thread appends blocks to a memory-mapped file,
+ * so the simulation never waits on the disk. When no block is free the tick is
+ * dropped from the log and the room writes a keyframe on the next tick instead.
+ *
+ * File layout, all integers big-endian:
+ * <pre>
+ * header  magic, format, protocol version, tick rate, room id, start millis, index offset
+ * block   length (including this 13 byte block header), tick, kind, messages
+ * index   count, then per keyframe: tick, file offset of its block (8 bytes each)
+ * </pre>
+ * Messages are encoded like the body of a BATCH: a varint length, then the
+ * message without its version byte. Keyframes hold the full room state as
+ * messages a client understands. The index is written when the log is closed;
+ * a log cut short by a crash has an index offset of 0 and is read up to the
+ * first empty block.
+ *
+ * Disk use is bounded twice over: a room moves on to a new log once its current
+ * one reaches {@link Recording#isFull() a size cap}, and once finished logs in
+ * the directory add up to more than the recorder's limit the oldest are deleted.
+ */
+public class MatchRecorder {
+    static final int MAGIC = 0x4A564D4C; // "JVML"
+    static final short FORMAT = 1;
+    static final int HEADER_SIZE = 32;
+    static final int INDEX_OFFSET_POSITION = 24;
+    static final int BLOCK_HEADER_SIZE = 13;
+    static final byte TICK = 1;
+    static final byte KEYFRAME = 2;
+    static final String LOG_SUFFIX = ".jvm";
+
+    private static final int BLOCK_SIZE = 32 * 1024; // Fits a keyframe of a full room
+    private static final int POOL_SIZE = 256;
+    private static final long MAP_CHUNK = 16L * 1024 * 1024;
+    private static final int KEYFRAME_INTERVAL_SECONDS = 5;
+    private static final long MAX_LOG_SIZE = 64L * 1024 * 1024;
+
+    private final Path directory;
+    private final long maxTotalSize;
+    // Logs the writer still has open, never pruned
+    private final Set<Path> openLogs = new HashSet<>();
+    private final BlockingQueue<Block> freeBlocks = new ArrayBlockingQueue<>(POOL_SIZE);
+    // Unbounded, but never holds more than the pool plus one close request per recording
+    private final BlockingQueue<Block> filled = new LinkedBlockingQueue<>();
+    private final LongAdder bytesWritten = new LongAdder();
+    private final LongAdder droppedTicks = new LongAdder();
+    private final Thread writer;
+
+    private static class Block {
+        final ByteBuffer data;
+        Recording recording;
+        long tick;
+        byte kind;
+
+        Block(int capacity) {
+            data = ByteBuffer.allocate(capacity);
+        }
+    }
+
+    /**
+     * The log of one room. The public methods are called from the room's worker
+     * thread; the file state below them belongs to the writer thread.
+     */
+    public class Recording {
+        private final int roomId;
+        private final int tickRate;
+        private final int keyframeIntervalTicks;
+        private final long startMillis = System.currentTimeMillis();
+        private Block current;
+        private boolean overflowed;
+        private boolean keyframeNeeded = true;
+        private long lastKeyframeTick;
+        private long submittedBytes = HEADER_SIZE;
+        // Writer thread state
+        private Path path;
+        private FileChannel file;
+        private MappedByteBuffer mapping;
+        private long mappingStart;
+        private long end = HEADER_SIZE;
+        private long[] index = new long[64];
+        private int indexSize;
+        private boolean failed;
+
+        private Recording(int roomId, int tickRate) {
+            this.roomId = roomId;
+            this.tickRate = tickRate;
+            this.keyframeIntervalTicks = KEYFRAME_INTERVAL_SECONDS * tickRate;
+        }
+
+        /**
+         * Copies a finished message (as returned by PacketWriter.toBuffer()) into this
+         * tick's block. Never blocks; if the pool is empty or the block is full the
+         * tick is dropped from the log.
+         */
+        public void append(ByteBuffer message) {
+            if (overflowed) return;
+            if (current == null) {
+                current = freeBlocks.poll();
+                if (current == null) {
+                    overflowed = true;
+                    return;
+                }
+                current.data.clear().position(BLOCK_HEADER_SIZE);
+            }
+            int length = message.remaining() - 1; // Without the version byte
+            ByteBuffer data = current.data;
+            if (data.remaining() < length + 5) {
+                overflowed = true;
+                return;
+            }
+            int value = length;
+            while ((value & ~0x7F) != 0) {
+                data.put((byte) ((value & 0x7F) | 0x80));
+                value >>>= 7;
+            }
+            data.put((byte) value);
+            data.put(data.position(), message, message.position() + 1, length);
+            data.position(data.position() + length);
+        }
+
+        /**
+         * Hands this tick's events to the writer, if there were any.
+         */
+        public void endTick(long tick) {
+            submit(tick, TICK);
+        }
+
+        /**
+         * True when the room should follow this tick with a keyframe: periodically,
+         * and right after a tick was dropped so replays can resynchronise.
+         */
+        public boolean isKeyframeDue(long tick) {
+            return keyframeNeeded || tick - lastKeyframeTick >= keyframeIntervalTicks;
+        }
+
+        /**
+         * True once the log has reached its size cap. The room should close it and
+         * carry on in a new one, which starts with a keyframe.
+         */
+        public boolean isFull() {
+            return submittedBytes >= MAX_LOG_SIZE;
+        }
+
+        /**
+         * Hands the state appended since the last endTick to the writer as a keyframe.
+         */
+        public void endKeyframe(long tick) {
+            // An empty room still gets a keyframe, it marks the point to seek to
+            if (current == null && !overflowed) {
+                current = freeBlocks.poll();
+                if (current != null) {
+                    current.data.clear().position(BLOCK_HEADER_SIZE);
+                } else {
+                    overflowed = true;
+                }
+            }
+            if (submit(tick, KEYFRAME)) {
+                keyframeNeeded = false;
+                lastKeyframeTick = tick;
+            }
+        }
+
+        private boolean submit(long tick, byte kind) {
+            Block block = current;
+            current = null;
+            if (overflowed) {
+                overflowed = false;
+                keyframeNeeded = true;
+                droppedTicks.increment();
+                if (block != null) freeBlocks.offer(block);
+                return false;
+            }
+            if (block == null) return true;
+            submittedBytes += block.data.position();
+            block.recording = this;
+            block.tick = tick;
+            block.kind = kind;
+            filled.offer(block);
+            return true;
+        }
+
+        /**
+         * Finishes the log. Anything handed over before this call is still written.
+         */
+        public void close() {
+            if (current != null) {
+                freeBlocks.offer(current);
+                current = null;
+            }
+            Block request = new Block(0);
+            request.recording = this;
+            filled.offer(request);
+        }
+
+        // Writer thread from here on
+
+        private void write(Block block) throws IOException {
+            if (file == null) open();
+            int length = block.data.position();
+            if (end + length > mappingStart + mapping.capacity()) {
+                map(end);
+            }
+            ByteBuffer data = block.data;
+            data.putInt(0, length);
+            data.putLong(4, block.tick);
+            data.put(12, block.kind);
+            mapping.put((int) (end - mappingStart), data, 0, length);
+            if (block.kind == KEYFRAME) {
+                if (indexSize == index.length) index = Arrays.copyOf(index, indexSize * 2);
+                index[indexSize++] = block.tick;
+                index[indexSize++] = end;
+            }
+            end += length;
+            bytesWritten.add(length);
+        }
+
+        private void open() throws IOException {
+            Files.createDirectories(directory);
+            path = directory.resolve("room-" + roomId + "-" + startMillis + LOG_SUFFIX);
+            file = FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            openLogs.add(path);
+            map(0);
+            mapping.putInt(0, MAGIC);
+            mapping.putShort(4, FORMAT);
+            mapping.put(6, Protocol.VERSION);
+            mapping.put(7, (byte) tickRate);
+            mapping.putInt(8, roomId);
+            mapping.putLong(16, startMillis);
+            mapping.putLong(INDEX_OFFSET_POSITION, 0);
+            System.out.println("[Server] Recording room " + roomId + " to " + path);
+        }
+
+        // Mapping past the end of the file grows it, the writer never calls write()
+        private void map(long start) throws IOException {
+            mappingStart = start;
+            mapping = file.map(FileChannel.MapMode.READ_WRITE, start, MAP_CHUNK);
+        }
+
+        private void finish() throws IOException {
+            if (file == null) return;
+            try {
+                if (!failed) writeIndex();
+            } finally {
+                mapping = null;
+                file.close();
+                file = null;
+                openLogs.remove(path);
+                pruneLogs();
+            }
+        }
+
+        private void writeIndex() throws IOException {
+            int size = 4 + indexSize * 8;
+            if (end + size > mappingStart + mapping.capacity()) {
+                map(end);
+            }
+            long indexOffset = end;
+            int position = (int) (end - mappingStart);
+            mapping.putInt(position, indexSize / 2);
+            position += 4;
+            for (int i = 0; i < indexSize; i++) {
+                mapping.putLong(position, index[i]);
+                position += 8;
+            }
+            end += size;
+            if (mappingStart > 0) map(0);
+            mapping.putLong(INDEX_OFFSET_POSITION, indexOffset);
+            mapping.force();
+            try {
+                // Drop the unused tail of the last chunk
+                file.truncate(end);
+            } catch (IOException e) {
+                // Silent fail, readers stop at the index offset anyway
+            }
+        }
+    }
+
+    /**
+     * A recorder that never deletes old logs.
+     */
+    public MatchRecorder(Path directory) {
+        this(directory, Long.MAX_VALUE);
+    }
+
+    /**
+     * @param maxTotalSize bytes the finished logs in the directory may add up to
+     *                     before the oldest are deleted
+     */
+    public MatchRecorder(Path directory, long maxTotalSize) {
+        this.directory = directory;
+        this.maxTotalSize = maxTotalSize;
+        for (int i = 0; i < POOL_SIZE; i++) {
+            freeBlocks.add(new Block(BLOCK_SIZE));
+        }
+        writer = new Thread(this::writeLoop, "MatchRecorder");
+        writer.setDaemon(true);
+    }
+
+    public void start() {
+        writer.start();
+    }
+
+    /**
+     * Starts a new log for the room. The file is created by the writer thread once
+     * the first block arrives.
+     */
+    public Recording open(int roomId, int tickRate) {
+        return new Recording(roomId, tickRate);
+    }
+
+    /**
+     * Writes out everything already handed over, then stops the writer. Open
+     * recordings must have been closed first to get their index.
+     */
+    public void stop() {
+        // Queued behind everything already handed over
+        filled.offer(new Block(0));
+        try {
+            writer.join(1000);
+        } catch (InterruptedException e) {
+            // Silent fail
+        }
+    }
+
+    public long getBytesWritten() {
+        return bytesWritten.sum();
+    }
+
+    public long getDroppedTicks() {
+        return droppedTicks.sum();
+    }
+
+    public int getQueueDepth() {
+        return filled.size();
+    }
+
+    // Writer thread. Deletes the oldest finished logs until the rest fit under the limit.
+    private void pruneLogs() {
+        if (maxTotalSize == Long.MAX_VALUE) return;
+        List<Path> logs;
+        try (Stream<Path> files = Files.list(directory)) {
+            logs = files.filter(log -> log.getFileName().toString().endsWith(LOG_SUFFIX) && !openLogs.contains(log))
+                .collect(Collectors.toList());
+        } catch (IOException e) {
+            return; // Silent fail, tried again when the next log is finished
+        }
+        long[] sizes = new long[logs.size()];
+        long[] modified = new long[logs.size()];
+        Integer[] order = new Integer[logs.size()];
+        long total = 0;
+        for (int i = 0; i < logs.size(); i++) {
+            try {
+                sizes[i] = Files.size(logs.get(i));
+                modified[i] = Files.getLastModifiedTime(logs.get(i)).toMillis();
+            } catch (IOException e) {
+                // Silent fail, counts as empty
+            }
+            order[i] = i;
+            total += sizes[i];
+        }
+        Arrays.sort(order, (a, b) -> Long.compare(modified[a], modified[b]));
+        for (int i = 0; i < order.length && total > maxTotalSize; i++) {
+            Path log = logs.get(order[i]);
+            try {
+                Files.delete(log);
+                total -= sizes[order[i]];
+                System.out.println("[Server] Deleted old match log " + log);
+            } catch (IOException e) {
+                // Silent fail
+            }
+        }
+    }
+
+    private void writeLoop() {
+        while (true) {
+            Block block;
+            try {
+                block = filled.take();
+            } catch (InterruptedException e) {
+                return;
+            }
+            Recording recording = block.recording;
+            if (recording == null) return;
+            block.recording = null;
+            try {
+                if (block.data.capacity() == 0) {
+                    recording.finish();
+                } else if (!recording.failed) {
+                    recording.write(block);
+                }
+            } catch (IOException e) {
+                // Stop writing this log, the room keeps running
+                recording.failed = true;
+                System.err.println("[Server] Recording room " + recording.roomId + " failed: " + e.getMessage());
+            }
+            if (block.data.capacity() > 0) {
+                freeBlocks.offer(block);
+            }
+        }
+    }
+}
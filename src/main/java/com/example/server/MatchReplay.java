@@ -0,0 +1,331 @@
+package com.example.server;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.example.protocol.PacketReader;
+import com.example.protocol.PacketWriter;
+import com.example.protocol.Protocol;
+
+/**
+ * Plays back a match log. Headless by default, printing kills and the final
+ * table; with --serve it stands in for the server on the game port and streams
+ * the match to the first client that joins, which then watches it as a spectator.
+ *
+ * Usage: MatchReplay &lt;log&gt; [--speed 1] [--from &lt;seconds&gt;] [--serve]
+ *
+ * A speed of 0 plays as fast as possible. --from jumps to the nearest keyframe
+ * through the log's index and fast-forwards from there.
+ */
+public class MatchReplay {
+    private static final int PORT = 7777;
+    // Never handed out by a room, and far enough off the map that nobody sees it
+    private static final int SPECTATOR_ID = 0x7FFFFFFF;
+    private static final float SPECTATOR_POSITION = -1000.0f;
+
+    private final MatchLog log;
+    private final double speed;
+    private final Map<Integer, ReplayPlayer> players = new HashMap<>();
+    private final Map<Integer, Integer> scores = new HashMap<>();
+    private long currentTick;
+    private int shots;
+    private int hits;
+    private int kills;
+    private DatagramChannel channel;
+    private SocketAddress viewer;
+    private final ByteBuffer datagram = ByteBuffer.allocate(Protocol.MAX_PACKET_SIZE);
+    private int datagramSequence = 0;
+    private int headerSize;
+
+    private static class ReplayPlayer {
+        String name;
+        float x, y;
+        int health;
+        boolean isDead;
+
+        ReplayPlayer(int id) {
+            this.name = "Player " + id;
+        }
+    }
+
+    public MatchReplay(MatchLog log, double speed) {
+        this.log = log;
+        this.speed = speed;
+    }
+
+    /**
+     * Binds the game port and waits for a client to join, then answers it with a
+     * spectator handle so it treats everything in the log as other players.
+     */
+    public void waitForViewer() throws IOException {
+        channel = DatagramChannel.open();
+        channel.bind(new InetSocketAddress(PORT));
+        System.out.println("[Replay] Waiting for a client to join on port " + PORT);
+        ByteBuffer received = ByteBuffer.allocate(Protocol.MAX_PACKET_SIZE);
+        PacketReader reader = new PacketReader(received);
+        while (viewer == null) {
+            received.clear();
+            SocketAddress from = channel.receive(received);
+            received.flip();
+            try {
+                if (reader.readHeader() == Protocol.JOIN) {
+                    viewer = from;
+                }
+            } catch (RuntimeException e) {
+                // Truncated or malformed packet, drop it
+            }
+        }
+        PacketWriter join = new PacketWriter().begin(Protocol.JOIN)
+            .writeVarInt(SPECTATOR_ID)
+            .writeFloat(SPECTATOR_POSITION)
+            .writeFloat(SPECTATOR_POSITION);
+        channel.send(join.toBuffer(), viewer);
+        System.out.println("[Replay] Streaming to " + viewer);
+    }
+
+    public void play(long fromTick) throws IOException, InterruptedException {
+        long keyframeTick = log.seek(fromTick);
+        if (fromTick > log.getFirstTick()) {
+            System.out.println("[Replay] Starting from the keyframe at " + seconds(keyframeTick) + "s");
+        }
+        long tickNanos = speed > 0 ? (long) (1_000_000_000L / log.getTickRate() / speed) : 0;
+        long startTime = System.nanoTime();
+        while (log.next()) {
+            currentTick = log.getTick();
+            // Catch up to the requested start without waiting
+            if (tickNanos > 0 && currentTick > fromTick) {
+                long due = startTime + (currentTick - Math.max(fromTick, keyframeTick)) * tickNanos;
+                long wait = due - System.nanoTime();
+                if (wait > 0) {
+                    Thread.sleep(wait / 1_000_000L, (int) (wait % 1_000_000L));
+                }
+            }
+            if (log.isKeyframe()) {
+                // Full state follows, forget anyone it does not mention
+                players.clear();
+            }
+            ByteBuffer messages = log.getMessages();
+            apply(messages.duplicate(), log.isKeyframe());
+            if (viewer != null) {
+                stream(messages);
+            }
+        }
+        printSummary();
+    }
+
+    private void apply(ByteBuffer messages, boolean keyframe) {
+        PacketReader reader = new PacketReader(messages);
+        while (reader.remaining() > 0) {
+            PacketReader message = reader.readSlice(reader.readVarInt());
+            try {
+                apply(message.readType(), message, keyframe);
+            } catch (RuntimeException e) {
+                // Truncated or malformed message, skip it
+            }
+        }
+    }
+
+    private void apply(byte type, PacketReader message, boolean keyframe) {
+        switch (type) {
+            case Protocol.JOIN: {
+                ReplayPlayer player = player(message.readVarInt());
+                player.x = message.readFloat();
+                player.y = message.readFloat();
+                player.health = 100;
+                break;
+            }
+            case Protocol.NAME:
+                player(message.readVarInt()).name = message.readString();
+                break;
+            case Protocol.POS: {
+                ReplayPlayer player = player(message.readVarInt());
+                player.x = message.readFloat();
+                player.y = message.readFloat();
+                break;
+            }
+            case Protocol.CLIENT: {
+                ReplayPlayer player = player(message.readVarInt());
+                player.x = message.readFloat();
+                player.y = message.readFloat();
+                message.readFloat(); // dirX
+                message.readFloat(); // dirY
+                player.health = message.readVarInt();
+                player.isDead = message.readBoolean();
+                break;
+            }
+            case Protocol.SHOOT:
+                // Keyframes list bullets already in flight as shots
+                if (!keyframe) shots++;
+                break;
+            case Protocol.HIT: {
+                ReplayPlayer victim = player(message.readVarInt());
+                message.readVarInt(); // shooterId
+                message.readVarInt(); // bulletId
+                victim.health = message.readVarInt();
+                hits++;
+                break;
+            }
+            case Protocol.DEATH: {
+                ReplayPlayer victim = player(message.readVarInt());
+                ReplayPlayer killer = player(message.readVarInt());
+                victim.isDead = true;
+                kills++;
+                System.out.println("[Replay] " + seconds(currentTick) + "s " + killer.name + " killed " + victim.name);
+                break;
+            }
+            case Protocol.RESPAWN: {
+                ReplayPlayer player = player(message.readVarInt());
+                player.x = message.readFloat();
+                player.y = message.readFloat();
+                player.health = 100;
+                player.isDead = false;
+                break;
+            }
+            case Protocol.DISCONNECT:
+                players.remove(message.readVarInt());
+                break;
+            case Protocol.SCORES:
+                scores.clear();
+                applyScores(message);
+                break;
+            case Protocol.SCORE_UPDATE:
+                applyScores(message);
+                break;
+            case Protocol.GAME_OVER:
+                System.out.println("[Replay] " + seconds(currentTick) + "s " + player(message.readVarInt()).name + " wins the match");
+                break;
+            default:
+                break;
+        }
+    }
+
+    private void applyScores(PacketReader message) {
+        int count = message.readVarInt();
+        for (int i = 0; i < count; i++) {
+            scores.put(message.readVarInt(), message.readVarInt());
+        }
+    }
+
+    private ReplayPlayer player(int id) {
+        return players.computeIfAbsent(id, ReplayPlayer::new);
+    }
+
+    /**
+     * Sends one block to the viewer as BATCH datagrams. Entries are already in
+     * batch layout, so they are copied through whole.
+     */
+    private void stream(ByteBuffer messages) throws IOException {
+        startDatagram();
+        while (messages.hasRemaining()) {
+            int start = messages.position();
+            int length = readVarInt(messages);
+            int entrySize = messages.position() - start + length;
+            messages.position(start);
+            if (datagram.position() > headerSize && datagram.remaining() < entrySize) {
+                sendDatagram();
+                startDatagram();
+            }
+            if (datagram.remaining() < entrySize) {
+                // Cannot fit even on its own, the client would drop it anyway
+                messages.position(start + entrySize);
+                continue;
+            }
+            datagram.put(datagram.position(), messages, start, entrySize);
+            datagram.position(datagram.position() + entrySize);
+            messages.position(start + entrySize);
+        }
+        if (datagram.position() > headerSize) {
+            sendDatagram();
+        }
+    }
+
+    private void startDatagram() {
+        datagram.clear();
+        datagram.put(Protocol.VERSION).put(Protocol.BATCH);
+        int value = ++datagramSequence;
+        while ((value & ~0x7F) != 0) {
+            datagram.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        datagram.put((byte) value);
+        headerSize = datagram.position();
+    }
+
+    private void sendDatagram() throws IOException {
+        datagram.flip();
+        channel.send(datagram, viewer);
+    }
+
+    private static int readVarInt(ByteBuffer buffer) {
+        int value = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            byte b = buffer.get();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("VarInt too long");
+    }
+
+    private String seconds(long tick) {
+        return String.format("%.1f", (tick - log.getFirstTick()) / (double) log.getTickRate());
+    }
+
+    private void printSummary() {
+        System.out.println("[Replay] Room " + log.getRoomId() + ", " + seconds(log.getLastTick()) + "s, "
+            + log.getKeyframeCount() + " keyframes");
+        System.out.println("[Replay] Shots: " + shots + ", hits: " + hits + ", kills: " + kills);
+        List<Map.Entry<Integer, Integer>> ranked = new ArrayList<>(scores.entrySet());
+        ranked.sort((a, b) -> b.getValue() - a.getValue());
+        for (Map.Entry<Integer, Integer> entry : ranked) {
+            System.out.println("[Replay]   " + player(entry.getKey()).name + ": " + entry.getValue());
+        }
+    }
+
+    public void close() throws IOException {
+        if (channel != null) {
+            channel.close();
+        }
+        log.close();
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length == 0) {
+            System.err.println("Usage: MatchReplay <log> [--speed 1] [--from <seconds>] [--serve]");
+            System.exit(1);
+        }
+        double speed = 1.0;
+        double fromSeconds = 0;
+        boolean serve = false;
+        for (int i = 1; i < args.length; i++) {
+            switch (args[i]) {
+                case "--speed": speed = Double.parseDouble(args[++i]); break;
+                case "--from": fromSeconds = Double.parseDouble(args[++i]); break;
+                case "--serve": serve = true; break;
+                default:
+                    System.err.println("Unknown option " + args[i]);
+                    System.exit(1);
+            }
+        }
+
+        MatchLog log = MatchLog.open(Paths.get(args[0]));
+        MatchReplay replay = new MatchReplay(log, speed);
+        try {
+            if (serve) {
+                replay.waitForViewer();
+            }
+            replay.play(log.getFirstTick() + (long) (fromSeconds * log.getTickRate()));
+        } finally {
+            replay.close();
+        }
+    }
+}
@@ -0,0 +1,115 @@
+package com.example.server;
+
+import java.nio.ByteBuffer;
+
+import com.example.protocol.Protocol;
+
+/**
+ * Accumulates the messages for one client during a tick so they leave as a
+ * single BATCH datagram. Each entry is the message without its version byte,
+ * prefixed by a varint length. Datagrams are numbered so the client can tell
+ * stale positions from a late one.
+ */
+public class OutboundBatch {
+    private static final int HEADER_SIZE = 2 + 5; // Version, type and sequence
+    private static final int MAX_LENGTH_PREFIX = 2; // Varint bytes for lengths below 16384
+
+    private final ByteBuffer buffer;
+    private final ByteBuffer view;
+    private int messageCount = 0;
+    private int sequence = 0;
+
+    public OutboundBatch() {
+        this(Protocol.MAX_PACKET_SIZE);
+    }
+
+    public OutboundBatch(int capacity) {
+        this.buffer = ByteBuffer.allocate(capacity);
+        this.view = buffer.duplicate();
+        clear();
+    }
+
+    /**
+     * Copies an encoded message (header included) into the batch. Returns false
+     * if it does not fit, in which case the caller should flush and retry.
+     */
+    public boolean append(ByteBuffer message) {
+        int length = message.remaining() - 1; // Drop the version byte
+        if (length <= 0 || buffer.remaining() < length + MAX_LENGTH_PREFIX) {
+            return false;
+        }
+        putVarInt(length);
+        buffer.put(buffer.position(), message, message.position() + 1, length);
+        buffer.position(buffer.position() + length);
+        messageCount++;
+        return true;
+    }
+
+    /**
+     * Appends a message kept by a {@link ReliableChannel} as a RELIABLE entry:
+     * the type, the reliable sequence, then the message without its version
+     * byte. Returns false if it does not fit.
+     */
+    public boolean appendReliable(int reliableSequence, byte[] message, int offset, int length) {
+        int entryLength = 1 + varIntSize(reliableSequence) + length;
+        if (buffer.remaining() < entryLength + MAX_LENGTH_PREFIX) {
+            return false;
+        }
+        putVarInt(entryLength);
+        buffer.put(Protocol.RELIABLE);
+        putVarInt(reliableSequence);
+        buffer.put(message, offset, length);
+        messageCount++;
+        return true;
+    }
+
+    private void putVarInt(int value) {
+        while ((value & ~0x7F) != 0) {
+            buffer.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte) value);
+    }
+
+    private static int varIntSize(int value) {
+        int size = 1;
+        while ((value & ~0x7F) != 0) {
+            value >>>= 7;
+            size++;
+        }
+        return size;
+    }
+
+    /**
+     * Largest encoded message (header included) that can ever fit into an empty batch.
+     */
+    public int maxMessageSize() {
+        return buffer.capacity() - HEADER_SIZE - MAX_LENGTH_PREFIX + 1;
+    }
+
+    public boolean isEmpty() {
+        return messageCount == 0;
+    }
+
+    public int getMessageCount() {
+        return messageCount;
+    }
+
+    /**
+     * Returns the finished datagram. The view is reused, so it is only valid
+     * until the next call to clear() or finish().
+     */
+    public ByteBuffer finish() {
+        view.clear();
+        view.limit(buffer.position());
+        return view;
+    }
+
+    public void clear() {
+        buffer.clear();
+        buffer.put(Protocol.VERSION);
+        buffer.put(Protocol.BATCH);
+        putVarInt(++sequence);
+        messageCount = 0;
+    }
+}
@@ -0,0 +1,219 @@
+package com.example.server;
+
+import java.io.IOException;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.example.protocol.Protocol;
+
+/**
+ * Moves socket writes off the room workers. Each client gets a bounded
+ * {@link Outbox}; outboxes are striped across a small pool of sender threads,
+ * so one client's datagrams always go out in order from the same thread while
+ * a slow send only delays the clients sharing that stripe.
+ *
+ * Losing any FRAGMENT of a message loses all of it, so a message's fragments
+ * are queued all or nothing and are never the datagram an overflow discards.
+ */
+public class OutboundSender {
+    private static final int DEFAULT_QUEUE_CAPACITY = 32;
+
+    public enum OverflowPolicy {
+        // Keep what is already queued and discard the new datagram
+        DROP_NEWEST,
+        // Discard the oldest queued datagram, newer state supersedes it. When that is
+        // a fragment the new datagram is discarded instead.
+        DROP_OLDEST
+    }
+
+    private final DatagramChannel channel;
+    private final OverflowPolicy overflowPolicy;
+    private final int queueCapacity;
+    private final List<Worker> workers = new ArrayList<>();
+    private final AtomicInteger nextStripe = new AtomicInteger();
+    private final LongAdder sent = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private final AtomicInteger queuedDatagrams = new AtomicInteger();
+
+    public OutboundSender(DatagramChannel channel, int threads, OverflowPolicy overflowPolicy) {
+        this(channel, threads, overflowPolicy, DEFAULT_QUEUE_CAPACITY);
+    }
+
+    public OutboundSender(DatagramChannel channel, int threads, OverflowPolicy overflowPolicy, int queueCapacity) {
+        this.channel = channel;
+        this.overflowPolicy = overflowPolicy;
+        this.queueCapacity = queueCapacity;
+        for (int i = 0; i < threads; i++) {
+            workers.add(new Worker("OutboundSender-" + i));
+        }
+    }
+
+    public void start() {
+        workers.forEach(Thread::start);
+    }
+
+    public void stop() {
+        workers.forEach(Thread::interrupt);
+    }
+
+    /**
+     * Creates the outbox for a new client and pins it to one sender thread.
+     */
+    public Outbox createOutbox(SocketAddress address) {
+        Worker worker = workers.get(Math.floorMod(nextStripe.getAndIncrement(), workers.size()));
+        return new Outbox(address, worker, queueCapacity);
+    }
+
+    /**
+     * Copies the datagram into the client's queue. Never blocks; when the queue is
+     * full the overflow policy decides which datagram is lost. Only the worker of
+     * the client's room enqueues, so the queue can only shrink between the check and the offer.
+     */
+    public void enqueue(Outbox outbox, ByteBuffer datagram) {
+        if (outbox.pending.remainingCapacity() == 0 && !evictOldest(outbox)) {
+            dropped.increment();
+            return;
+        }
+
+        // Buffers are recycled per client; once the free list is empty every buffer is
+        // queued or being sent, so at most capacity + 1 are ever allocated
+        ByteBuffer copy = outbox.free.poll();
+        if (copy == null) {
+            copy = ByteBuffer.allocate(Protocol.MAX_PACKET_SIZE);
+        }
+        // Absolute bulk copy, leaves the caller's buffer untouched without a duplicate()
+        copy.clear();
+        copy.put(0, datagram, datagram.position(), datagram.remaining());
+        copy.limit(datagram.remaining());
+        outbox.pending.offer(copy);
+        queuedDatagrams.incrementAndGet();
+
+        if (outbox.scheduled.compareAndSet(false, true)) {
+            outbox.worker.ready.offer(outbox);
+        }
+    }
+
+    /**
+     * Makes room for a message that goes out as count FRAGMENT datagrams,
+     * discarding older datagrams as the overflow policy allows. Returns false,
+     * and counts every fragment as dropped, if there is not room for all of
+     * them; the caller then sends none.
+     */
+    public boolean reserve(Outbox outbox, int count) {
+        while (outbox.pending.remainingCapacity() < count) {
+            if (count > queueCapacity || !evictOldest(outbox)) {
+                dropped.add(count);
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Discards the oldest queued datagram under DROP_OLDEST unless it is a fragment.
+    // Returns false if nothing may be discarded.
+    private boolean evictOldest(Outbox outbox) {
+        if (overflowPolicy == OverflowPolicy.DROP_NEWEST) return false;
+        ByteBuffer oldest;
+        // The sender thread takes from the same end, hold it off between the look and the take
+        synchronized (outbox) {
+            oldest = outbox.pending.peek();
+            if (oldest == null) return true; // Sent meanwhile
+            if (oldest.get(1) == Protocol.FRAGMENT) return false;
+            outbox.pending.poll();
+        }
+        dropped.increment();
+        queuedDatagrams.decrementAndGet();
+        outbox.free.offer(oldest);
+        return true;
+    }
+
+    public long getSentCount() {
+        return sent.sum();
+    }
+
+    public long getDroppedCount() {
+        return dropped.sum();
+    }
+
+    /**
+     * Datagrams waiting to be written across every client.
+     */
+    public int getQueueDepth() {
+        return queuedDatagrams.get();
+    }
+
+    public static class Outbox {
+        // Changes when the client resumes its session from a new address
+        private volatile SocketAddress address;
+        private final Worker worker;
+        private final BlockingQueue<ByteBuffer> pending;
+        private final BlockingQueue<ByteBuffer> free;
+        private final AtomicBoolean scheduled = new AtomicBoolean(false);
+
+        private Outbox(SocketAddress address, Worker worker, int capacity) {
+            this.address = address;
+            this.worker = worker;
+            this.pending = new ArrayBlockingQueue<>(capacity);
+            this.free = new ArrayBlockingQueue<>(capacity + 1);
+        }
+
+        public int getQueueDepth() {
+            return pending.size();
+        }
+
+        /**
+         * Sends everything from now on to the given address. Datagrams already
+         * queued may still go to the old one.
+         */
+        public void redirect(SocketAddress address) {
+            this.address = address;
+        }
+    }
+
+    private class Worker extends Thread {
+        private final BlockingQueue<Outbox> ready = new LinkedBlockingQueue<>();
+
+        Worker(String name) {
+            super(name);
+            setDaemon(true);
+        }
+
+        @Override
+        public void run() {
+            while (!isInterrupted()) {
+                Outbox outbox;
+                try {
+                    outbox = ready.take();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                // Clear first so an enqueue racing with the drain reschedules the outbox
+                outbox.scheduled.set(false);
+                while (true) {
+                    ByteBuffer datagram;
+                    synchronized (outbox) {
+                        datagram = outbox.pending.poll();
+                    }
+                    if (datagram == null) break;
+                    queuedDatagrams.decrementAndGet();
+                    try {
+                        channel.send(datagram, outbox.address);
+                        sent.increment();
+                    } catch (IOException e) {
+                        // Silent fail
+                    }
+                    outbox.free.offer(datagram);
+                }
+            }
+        }
+    }
+}
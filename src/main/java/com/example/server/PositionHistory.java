@@ -0,0 +1,88 @@
+package com.example.server;
+
+/**
+ * Fixed-size ring of timestamped positions for one player, used to rewind
+ * targets to where a shooter saw them. Storage is allocated once, recording
+ * never allocates, and lookups binary search the ring.
+ */
+public class PositionHistory {
+    private final long[] times;
+    private final float[] xs;
+    private final float[] ys;
+    private final int mask;
+    private int head = 0; // Index of the next slot to write
+    private int count = 0;
+
+    public PositionHistory(int capacity) {
+        if (Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("Capacity must be a power of two: " + capacity);
+        }
+        this.times = new long[capacity];
+        this.xs = new float[capacity];
+        this.ys = new float[capacity];
+        this.mask = capacity - 1;
+    }
+
+    public void record(long time, float x, float y) {
+        times[head] = time;
+        xs[head] = x;
+        ys[head] = y;
+        head = (head + 1) & mask;
+        if (count < times.length) {
+            count++;
+        }
+    }
+
+    /**
+     * Forgets everything, used when the player teleports so a rewind never
+     * interpolates across the jump.
+     */
+    public void clear() {
+        count = 0;
+    }
+
+    /**
+     * Writes the position at the given time into out[0], out[1], interpolating
+     * between the two surrounding samples. Times outside the recorded range clamp
+     * to the oldest or newest sample. Returns false if nothing has been recorded.
+     */
+    public boolean sample(long time, float[] out) {
+        if (count == 0) return false;
+
+        int newest = slot(count - 1);
+        if (time - times[newest] >= 0) {
+            out[0] = xs[newest];
+            out[1] = ys[newest];
+            return true;
+        }
+        int oldest = slot(0);
+        if (time - times[oldest] <= 0) {
+            out[0] = xs[oldest];
+            out[1] = ys[oldest];
+            return true;
+        }
+
+        // Find the last sample at or before time; samples are in time order
+        int low = 0;
+        int high = count - 1;
+        while (low < high) {
+            int mid = (low + high + 1) >>> 1;
+            if (time - times[slot(mid)] >= 0) {
+                low = mid;
+            } else {
+                high = mid - 1;
+            }
+        }
+        int before = slot(low);
+        int after = slot(low + 1);
+        float alpha = (float) (time - times[before]) / (times[after] - times[before]);
+        out[0] = xs[before] + (xs[after] - xs[before]) * alpha;
+        out[1] = ys[before] + (ys[after] - ys[before]) * alpha;
+        return true;
+    }
+
+    // Maps a logical index (0 = oldest) to its array slot
+    private int slot(int index) {
+        return (head - count + index) & mask;
+    }
+}
@@ -0,0 +1,196 @@
+package com.example.server;
+
+import java.nio.ByteBuffer;
+
+import com.example.protocol.Protocol;
+
+/**
+ * Server side of the reliable-ordered channel to one client. Critical events
+ * are copied in under a sequence number, go out in the client's batch as
+ * RELIABLE entries and are sent again every retransmission timeout until the
+ * client's selective ack covers them. One too big for a batch goes out whole
+ * as a RELIABLE message cut into fragments, and is resent whole. The client
+ * delivers them in sequence order, exactly once.
+ *
+ * The client only holds {@link Protocol#RELIABLE_WINDOW} messages ahead of a
+ * gap, so only that many past the oldest unacknowledged one are sent; later
+ * ones wait here until acks move the window up. Messages are stored back to
+ * back in one buffer, oldest first, so an ack only ever frees from the front.
+ * Only the room's worker thread uses a channel.
+ */
+public class ReliableChannel {
+    private static final int CAPACITY = 256; // Messages kept until acked, a power of two
+    private static final int MASK = CAPACITY - 1;
+    // Room for the largest message twice over
+    private static final int BUFFER_SIZE = 2 * Protocol.MAX_MESSAGE_SIZE;
+    // RELIABLE type and sequence, in front of a message sent in fragments
+    private static final int HEADER_SIZE = 1 + 5;
+    public static final int MAX_MESSAGE_SIZE = Protocol.MAX_MESSAGE_SIZE - HEADER_SIZE;
+    // Acks ride on snapshot acks, which only go out when a snapshot arrives; allow
+    // for two snapshot intervals so one late snapshot does not cause a resend
+    private static final long ACK_DELAY_NANOS = 100_000_000L;
+    private static final long MIN_TIMEOUT_NANOS = 120_000_000L;
+    private static final long MAX_TIMEOUT_NANOS = 1_000_000_000L;
+    private static final long INITIAL_TIMEOUT_NANOS = 250_000_000L;
+    private static final int MAX_BACKOFF_SHIFT = 3;
+
+    private final byte[] data = new byte[BUFFER_SIZE];
+    private int dataStart = 0;
+    private int dataEnd = 0;
+    // Per message kept, indexed by sequence & MASK
+    private final int[] offsets = new int[CAPACITY];
+    private final int[] lengths = new int[CAPACITY];
+    private final long[] sentAt = new long[CAPACITY];
+    private final int[] sends = new int[CAPACITY];
+    private final boolean[] acked = new boolean[CAPACITY];
+    // Oldest unacknowledged sequence, and the next one to hand out
+    private int oldest = 1;
+    private int next = 1;
+
+    /**
+     * Copies an encoded message (header included) in under the next sequence
+     * number. Returns the sequence, or -1 if the message is too big or the
+     * channel is full, in which case it is not sent reliably. Only send it now
+     * if {@link #isInWindow} says so.
+     */
+    public int add(ByteBuffer message) {
+        int length = message.remaining() - 1; // Drop the version byte
+        if (length <= 0 || length > MAX_MESSAGE_SIZE || next - oldest == CAPACITY) return -1;
+        if (BUFFER_SIZE - dataEnd < length) {
+            compact();
+            if (BUFFER_SIZE - dataEnd < length) return -1;
+        }
+        int sequence = next++;
+        int index = sequence & MASK;
+        message.get(message.position() + 1, data, dataEnd, length);
+        offsets[index] = dataEnd;
+        lengths[index] = length;
+        sends[index] = 0;
+        acked[index] = false;
+        dataEnd += length;
+        return sequence;
+    }
+
+    /**
+     * Appends the message as a RELIABLE entry and notes when it was sent.
+     * Returns false if it does not fit, in which case the caller should flush
+     * and retry. If it does not fit an empty batch either, send it with
+     * {@link #encode} instead.
+     */
+    public boolean write(int sequence, OutboundBatch batch, long now) {
+        int index = sequence & MASK;
+        if (!batch.appendReliable(sequence, data, offsets[index], lengths[index])) return false;
+        markSent(sequence, now);
+        return true;
+    }
+
+    /**
+     * Writes the message into the target as a whole RELIABLE message, version
+     * byte first, for sending in fragments. Returns the target, flipped; call
+     * {@link #markSent} once the fragments are on their way.
+     */
+    public ByteBuffer encode(int sequence, ByteBuffer target) {
+        int index = sequence & MASK;
+        target.clear();
+        target.put(Protocol.VERSION).put(Protocol.RELIABLE);
+        int value = sequence;
+        while ((value & ~0x7F) != 0) {
+            target.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        target.put((byte) value);
+        target.put(data, offsets[index], lengths[index]);
+        target.flip();
+        return target;
+    }
+
+    public void markSent(int sequence, long now) {
+        int index = sequence & MASK;
+        sentAt[index] = now;
+        sends[index]++;
+    }
+
+    public int getOldest() {
+        return oldest;
+    }
+
+    /**
+     * True if the client can hold the message, however many before it are still missing.
+     */
+    public boolean isInWindow(int sequence) {
+        return sequence - oldest < Protocol.RELIABLE_WINDOW;
+    }
+
+    /**
+     * The first sequence past the window, or the next one to hand out if that is sooner.
+     */
+    public int getWindowEnd() {
+        return next - oldest > Protocol.RELIABLE_WINDOW ? oldest + Protocol.RELIABLE_WINDOW : next;
+    }
+
+    public boolean isSent(int sequence) {
+        return sends[sequence & MASK] > 0;
+    }
+
+    public int getNext() {
+        return next;
+    }
+
+    /**
+     * True if the message has gone unacknowledged for longer than the timeout,
+     * which doubles with each send up to a cap.
+     */
+    public boolean isDue(int sequence, long now, long timeout) {
+        int index = sequence & MASK;
+        if (acked[index] || sends[index] == 0) return false;
+        long backoff = Math.min(timeout << Math.min(sends[index] - 1, MAX_BACKOFF_SHIFT), MAX_TIMEOUT_NANOS);
+        return now - sentAt[index] >= backoff;
+    }
+
+    /**
+     * Retransmission timeout for a client with the given smoothed round trip
+     * time, 0 if it has not been measured yet.
+     */
+    public static long timeout(long rttNanos) {
+        if (rttNanos <= 0) return INITIAL_TIMEOUT_NANOS;
+        return Math.max(MIN_TIMEOUT_NANOS, Math.min(MAX_TIMEOUT_NANOS, 2 * rttNanos + ACK_DELAY_NANOS));
+    }
+
+    /**
+     * Applies an ack from the client: every sequence up to and including
+     * cumulative, plus cumulative + 1 + i for each bit i set in the mask. Acks
+     * for sequences never sent are ignored.
+     */
+    public void acknowledge(int cumulative, int bits) {
+        if (cumulative - next >= 0) return;
+        for (int sequence = oldest; sequence - cumulative <= 0; sequence++) {
+            acked[sequence & MASK] = true;
+        }
+        for (int i = 0; bits != 0 && i < 32; i++, bits >>>= 1) {
+            int sequence = cumulative + 1 + i;
+            if ((bits & 1) != 0 && sequence - oldest >= 0 && sequence - next < 0) {
+                acked[sequence & MASK] = true;
+            }
+        }
+        while (oldest != next && acked[oldest & MASK]) {
+            int index = oldest & MASK;
+            dataStart = offsets[index] + lengths[index];
+            oldest++;
+        }
+        if (oldest == next) {
+            dataStart = 0;
+            dataEnd = 0;
+        }
+    }
+
+    // Moves the messages still in flight to the front of the buffer
+    private void compact() {
+        if (dataStart == 0) return;
+        System.arraycopy(data, dataStart, data, 0, dataEnd - dataStart);
+        for (int sequence = oldest; sequence != next; sequence++) {
+            offsets[sequence & MASK] -= dataStart;
+        }
+        dataEnd -= dataStart;
+        dataStart = 0;
+    }
+}
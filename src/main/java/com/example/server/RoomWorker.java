@@ -0,0 +1,90 @@
+package com.example.server;
+
+import java.util.Arrays;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A thread that owns a set of rooms and ticks them. The server starts at most
+ * one worker per spare core, so each room's simulation stays on one thread and
+ * rooms on different workers run in parallel.
+ */
+public class RoomWorker extends Thread {
+    private static final long IDLE_PARK_NANOS = 100_000_000L;
+
+    // Copied on every change so the loop can walk it without locks or iterators
+    private volatile GameRoom[] rooms = new GameRoom[0];
+    private volatile boolean running = true;
+
+    public RoomWorker(String name) {
+        super(name);
+        setDaemon(true);
+    }
+
+    public void addRoom(GameRoom room) {
+        room.setWorker(this);
+        synchronized (this) {
+            GameRoom[] updated = Arrays.copyOf(rooms, rooms.length + 1);
+            updated[rooms.length] = room;
+            rooms = updated;
+        }
+        wake();
+    }
+
+    /**
+     * Detaches a room. Safe to call from the worker itself, e.g. from a task the
+     * room runs, since the room list is copy-on-write.
+     */
+    public void removeRoom(GameRoom room) {
+        synchronized (this) {
+            GameRoom[] current = rooms;
+            GameRoom[] updated = new GameRoom[current.length];
+            int count = 0;
+            for (GameRoom existing : current) {
+                if (existing != room) updated[count++] = existing;
+            }
+            rooms = Arrays.copyOf(updated, count);
+        }
+        room.setWorker(null);
+    }
+
+    public int getRoomCount() {
+        return rooms.length;
+    }
+
+    /**
+     * Interrupts the park so newly delivered packets are handled right away.
+     */
+    public void wake() {
+        LockSupport.unpark(this);
+    }
+
+    public void shutdown() {
+        running = false;
+        wake();
+    }
+
+    @Override
+    public void run() {
+        while (running) {
+            long now = System.nanoTime();
+            long nextDeadline = now + IDLE_PARK_NANOS;
+            GameRoom[] current = rooms;
+            for (int i = 0; i < current.length; i++) {
+                GameRoom room = current[i];
+                try {
+                    room.update(now);
+                } catch (Exception e) {
+                    System.err.println("[Server] Error in room " + room.getId() + ": " + e.getMessage());
+                    e.printStackTrace();
+                }
+                if (room.getNextTick() - nextDeadline < 0) {
+                    nextDeadline = room.getNextTick();
+                }
+            }
+            long wait = nextDeadline - System.nanoTime();
+            if (wait > 0) {
+                LockSupport.parkNanos(this, wait);
+            }
+        }
+    }
+}
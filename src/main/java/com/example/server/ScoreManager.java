@@ -1,45 +1,244 @@
 package com.example.server;
 
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.Map;
+import java.util.Arrays;
 
+import com.example.protocol.PacketWriter;
+import com.example.protocol.Protocol;
+
+/**
+ * Kill counts keyed by player handle, kept in rank order: highest score first,
+ * and among equal scores whoever got there first. Rooms hold at most a few
+ * dozen players, so the ranking is a sorted array with a slot-indexed position
+ * table beside it. A kill finds the player's new rank by binary search and
+ * shifts the handful of tied players behind it; rank lookups and top-K reads
+ * are direct array accesses.
+ *
+ * Changes are tracked between calls to {@link #writeChanges}, so a tick's worth
+ * of kills goes out as one SCORE_UPDATE naming only the players whose score
+ * moved. Removals and resets fall back to a full SCORES table.
+ */
 public class ScoreManager {
     private static final int WINNING_SCORE = 10;
-    private final Map<String, Integer> playerScores = new ConcurrentHashMap<>();
-    private String winner = null;
+    public static final int NO_WINNER = 0;
+    // Rank order
+    private int[] handles = new int[16];
+    private int[] scores = new int[16];
+    private int count = 0;
+    // Rank of each player by handle slot, -1 when the slot has no player
+    private int[] ranks = newRanks(16);
+    private int winner = NO_WINNER;
+    // Players whose score changed since the last writeChanges(), each listed once
+    private int[] changed = new int[16];
+    private boolean[] changedSlots = new boolean[16];
+    private int changedCount = 0;
+    private boolean tableChanged = false;
 
-    public void addPlayer(String playerId) {
-        playerScores.put(playerId, 0);
+    public void addPlayer(int playerId) {
+        if (indexOf(playerId) >= 0) return;
+        int slot = HandleTable.slot(playerId);
+        if (slot >= ranks.length) {
+            int capacity = Math.max(slot + 1, ranks.length * 2);
+            int oldLength = ranks.length;
+            ranks = Arrays.copyOf(ranks, capacity);
+            Arrays.fill(ranks, oldLength, capacity, -1);
+            changedSlots = Arrays.copyOf(changedSlots, capacity);
+        }
+        if (count == handles.length) {
+            handles = Arrays.copyOf(handles, count * 2);
+            scores = Arrays.copyOf(scores, count * 2);
+        }
+        // A new player has the lowest possible score and reached it last
+        handles[count] = playerId;
+        scores[count] = 0;
+        ranks[slot] = count;
+        count++;
+        markChanged(playerId);
     }
 
-    public void removePlayer(String playerId) {
-        playerScores.remove(playerId);
+    public void removePlayer(int playerId) {
+        int index = indexOf(playerId);
+        if (index < 0) return;
+        ranks[HandleTable.slot(playerId)] = -1;
+        move(index + 1, index, count - index - 1);
+        count--;
+        tableChanged = true;
     }
 
-    public int addKill(String playerId) {
-        if (!playerScores.containsKey(playerId)) return 0;
-        
-        int newScore = playerScores.compute(playerId, (id, score) -> (score == null ? 1 : score + 1));
-        if (newScore >= WINNING_SCORE && winner == null) {
+    public int addKill(int playerId) {
+        int index = indexOf(playerId);
+        if (index < 0) return 0;
+
+        int oldScore = scores[index];
+        int newScore = oldScore + 1;
+        // Overtake everyone ahead who is still on the old score
+        int rank = firstRankWithScoreAtMost(oldScore, index);
+        if (rank < index) {
+            move(rank, rank + 1, index - rank);
+            handles[rank] = playerId;
+            ranks[HandleTable.slot(playerId)] = rank;
+        }
+        scores[rank] = newScore;
+        markChanged(playerId);
+        if (newScore >= WINNING_SCORE && winner == NO_WINNER) {
             winner = playerId;
         }
         return newScore;
     }
 
+    /**
+     * Binary search over ranks [0, limit) for the first player whose score is at
+     * most the given one, or limit if every one of them is ahead.
+     */
+    private int firstRankWithScoreAtMost(int score, int limit) {
+        int low = 0;
+        int high = limit;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (scores[mid] > score) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    // Shifts a run of ranks and keeps the position table in step
+    private void move(int from, int to, int length) {
+        System.arraycopy(handles, from, handles, to, length);
+        System.arraycopy(scores, from, scores, to, length);
+        for (int i = to; i < to + length; i++) {
+            ranks[HandleTable.slot(handles[i])] = i;
+        }
+    }
+
     public boolean hasWinner() {
-        return winner != null;
+        return winner != NO_WINNER;
     }
 
-    public String getWinner() {
+    public int getWinner() {
         return winner;
     }
 
-    public Map<String, Integer> getScores() {
-        return new ConcurrentHashMap<>(playerScores);
+    public int getPlayerCount() {
+        return count;
     }
 
+    /**
+     * Handle of the player at the given rank, 0 being the leader.
+     */
+    public int getPlayerAt(int rank) {
+        return handles[rank];
+    }
+
+    public int getScoreAt(int rank) {
+        return scores[rank];
+    }
+
+    /**
+     * Rank of the player, 0 being the leader, or -1 if they are not on the table.
+     */
+    public int getRank(int playerId) {
+        return indexOf(playerId);
+    }
+
+    public int getScore(int playerId) {
+        int index = indexOf(playerId);
+        return index >= 0 ? scores[index] : 0;
+    }
+
+    public boolean hasChanges() {
+        return changedCount > 0 || tableChanged;
+    }
+
+    /**
+     * Encodes the whole table as a SCORES message, in rank order.
+     */
+    public void writeScores(PacketWriter out) {
+        out.begin(Protocol.SCORES).writeVarInt(count);
+        for (int i = 0; i < count; i++) {
+            out.writeVarInt(handles[i]).writeVarInt(scores[i]);
+        }
+        writeWinner(out);
+    }
+
+    /**
+     * Encodes everything that changed since the last call and starts tracking
+     * afresh: a SCORE_UPDATE with just the changed players, or the full table
+     * after a removal or reset.
+     */
+    public void writeChanges(PacketWriter out) {
+        if (tableChanged) {
+            writeScores(out);
+        } else {
+            out.begin(Protocol.SCORE_UPDATE).writeVarInt(changedCount);
+            for (int i = 0; i < changedCount; i++) {
+                int playerId = changed[i];
+                out.writeVarInt(playerId).writeVarInt(getScore(playerId));
+            }
+            writeWinner(out);
+        }
+        clearChanges();
+    }
+
+    private void writeWinner(PacketWriter out) {
+        out.writeBoolean(winner != NO_WINNER);
+        if (winner != NO_WINNER) {
+            out.writeVarInt(winner);
+        }
+    }
+
+    /**
+     * Starts a new match: every player stays on the table with a score of 0, in
+     * the order they finished the last one.
+     */
     public void reset() {
-        playerScores.clear();
-        winner = null;
+        Arrays.fill(scores, 0, count, 0);
+        winner = NO_WINNER;
+        tableChanged = true;
+    }
+
+    /**
+     * Forgets every player, for a room that is being recycled.
+     */
+    public void clear() {
+        for (int i = 0; i < count; i++) {
+            ranks[HandleTable.slot(handles[i])] = -1;
+        }
+        count = 0;
+        winner = NO_WINNER;
+        clearChanges();
+    }
+
+    private void markChanged(int playerId) {
+        int slot = HandleTable.slot(playerId);
+        if (changedSlots[slot]) return;
+        changedSlots[slot] = true;
+        if (changedCount == changed.length) {
+            changed = Arrays.copyOf(changed, changedCount * 2);
+        }
+        changed[changedCount++] = playerId;
+    }
+
+    private void clearChanges() {
+        for (int i = 0; i < changedCount; i++) {
+            changedSlots[HandleTable.slot(changed[i])] = false;
+        }
+        changedCount = 0;
+        tableChanged = false;
+    }
+
+    private int indexOf(int playerId) {
+        int slot = HandleTable.slot(playerId);
+        if (slot >= ranks.length) return -1;
+        int rank = ranks[slot];
+        // The slot may have been reused by a later generation
+        return rank >= 0 && handles[rank] == playerId ? rank : -1;
+    }
+
+    private static int[] newRanks(int capacity) {
+        int[] ranks = new int[capacity];
+        Arrays.fill(ranks, -1);
+        return ranks;
     }
-} 
\ No newline at end of file
+}
@@ -26,6 +26,8 @@ public class ServerLauncher {
 
             GameServer server = new GameServer();
             server.start();
+            // Lets rooms finish their match logs on Ctrl+C
+            Runtime.getRuntime().addShutdownHook(new Thread(server::stop));
             System.out.println("\nServer is running. Press Ctrl+C to stop.");
         } catch (Exception e) {
             System.err.println("Failed to start server: " + e.getMessage());
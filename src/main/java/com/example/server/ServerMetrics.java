@@ -0,0 +1,373 @@
+package com.example.server;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+import javax.management.NotificationEmitter;
+import javax.management.ObjectName;
+import javax.management.openmbean.CompositeData;
+
+import com.example.protocol.Protocol;
+import com.sun.management.GarbageCollectionNotificationInfo;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Server-wide metrics registry. Hot paths only increment LongAdders, which are
+ * striped per thread, so recording never blocks. Everything is exported on
+ * demand: as Prometheus text over a local HTTP endpoint and as a JMX MBean.
+ */
+public class ServerMetrics implements ServerMetricsMBean {
+    private static final String PREFIX = "justvibes_";
+    private static final long MICROS = 1_000L;
+    private static final long MILLIS = 1_000_000L;
+
+    // Message type names for labels, indexed by the unsigned type byte
+    private static final String[] TYPE_NAMES = new String[256];
+
+    static {
+        for (Field field : Protocol.class.getFields()) {
+            if (field.getType() == byte.class && Modifier.isStatic(field.getModifiers())
+                    && !field.getName().equals("VERSION")) {
+                try {
+                    TYPE_NAMES[field.getByte(null) & 0xFF] = field.getName();
+                } catch (IllegalAccessException e) {
+                    // Silent fail
+                }
+            }
+        }
+    }
+
+    /**
+     * Appends extra series, such as per-client gauges, at scrape time.
+     */
+    public interface Collector {
+        void collect(StringBuilder out);
+    }
+
+    private final Histogram tickDuration = new Histogram(
+        50 * MICROS, 100 * MICROS, 250 * MICROS, 500 * MICROS,
+        MILLIS, 2 * MILLIS, 4 * MILLIS, 8 * MILLIS, 16 * MILLIS, 33 * MILLIS);
+    private final Histogram gcPauses = new Histogram(
+        MILLIS, 5 * MILLIS, 10 * MILLIS, 25 * MILLIS, 50 * MILLIS, 100 * MILLIS, 250 * MILLIS, 1000 * MILLIS);
+    private final LongAdder[] inboundPackets = newAdders();
+    private final LongAdder[] inboundBytes = newAdders();
+    private final LongAdder[] outboundMessages = newAdders();
+    private final LongAdder[] outboundBytes = newAdders();
+    private final LongAdder inboundDropped = new LongAdder();
+    private final LongAdder sessionsTimedOut = new LongAdder();
+    private final LongAdder reliableRetransmits = new LongAdder();
+    private final LongAdder reliableOverflows = new LongAdder();
+    private final LongAdder fragmentedMessages = new LongAdder();
+    private final LongAdder fragments = new LongAdder();
+    private final LongAdder[] inboundRateLimited = newAdders();
+    private final Map<String, Gauge> gauges = new ConcurrentHashMap<>();
+    private final List<Collector> collectors = new CopyOnWriteArrayList<>();
+    private HttpServer httpServer;
+    private ObjectName objectName;
+
+    private static class Gauge {
+        final String type;
+        final String help;
+        final LongSupplier value;
+
+        Gauge(String type, String help, LongSupplier value) {
+            this.type = type;
+            this.help = help;
+            this.value = value;
+        }
+    }
+
+    public ServerMetrics() {
+        java.lang.management.OperatingSystemMXBean os = ManagementFactory.getOperatingSystemMXBean();
+        if (os instanceof com.sun.management.OperatingSystemMXBean) {
+            com.sun.management.OperatingSystemMXBean process = (com.sun.management.OperatingSystemMXBean) os;
+            registerCounter("process_cpu_milliseconds_total", "CPU time used by the server process.",
+                () -> process.getProcessCpuTime() / MILLIS);
+        }
+        // Pause durations come from GC notifications, so they cost nothing between collections
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            if (gc instanceof NotificationEmitter) {
+                ((NotificationEmitter) gc).addNotificationListener((notification, handback) -> {
+                    if (GarbageCollectionNotificationInfo.GARBAGE_COLLECTION_NOTIFICATION.equals(notification.getType())) {
+                        GarbageCollectionNotificationInfo info =
+                            GarbageCollectionNotificationInfo.from((CompositeData) notification.getUserData());
+                        if (isPause(info)) {
+                            gcPauses.record(info.getGcInfo().getDuration() * MILLIS);
+                        }
+                    }
+                }, null, null);
+            }
+        }
+    }
+
+    /**
+     * True if the collection stopped the application for its whole duration.
+     * Concurrent collectors report their cycles separately from their pauses
+     * (ZGC and Shenandoah as "... Cycles" and "... Pauses", G1 as "G1 Concurrent
+     * GC"); a cycle's duration is mostly time the application kept running.
+     */
+    private static boolean isPause(GarbageCollectionNotificationInfo info) {
+        String name = info.getGcName();
+        return !name.endsWith("Cycles") && !name.contains("Concurrent")
+            && !info.getGcAction().contains("concurrent");
+    }
+
+    private static LongAdder[] newAdders() {
+        LongAdder[] adders = new LongAdder[256];
+        for (int i = 0; i < adders.length; i++) {
+            adders[i] = new LongAdder();
+        }
+        return adders;
+    }
+
+    public void recordInbound(byte type, int bytes) {
+        inboundPackets[type & 0xFF].increment();
+        inboundBytes[type & 0xFF].add(bytes);
+    }
+
+    public void recordInboundDropped() {
+        inboundDropped.increment();
+    }
+
+    public void recordReliableRetransmit() {
+        reliableRetransmits.increment();
+    }
+
+    public void recordReliableOverflow() {
+        reliableOverflows.increment();
+    }
+
+    public void recordFragmented(int count) {
+        fragmentedMessages.increment();
+        fragments.add(count);
+    }
+
+    public void recordSessionTimedOut() {
+        sessionsTimedOut.increment();
+    }
+
+    public void recordInboundRateLimited(byte type) {
+        inboundRateLimited[type & 0xFF].increment();
+    }
+
+    public void recordOutbound(byte type, int bytes) {
+        outboundMessages[type & 0xFF].increment();
+        outboundBytes[type & 0xFF].add(bytes);
+    }
+
+    public void recordTick(long nanos) {
+        tickDuration.record(nanos);
+    }
+
+    /**
+     * Registers a value read at scrape time. The name is prefixed with "justvibes_".
+     */
+    public void registerGauge(String name, String help, LongSupplier value) {
+        gauges.put(PREFIX + name, new Gauge("gauge", help, value));
+    }
+
+    /**
+     * Like {@link #registerGauge}, for a value that only ever grows and is kept elsewhere.
+     */
+    public void registerCounter(String name, String help, LongSupplier value) {
+        gauges.put(PREFIX + name, new Gauge("counter", help, value));
+    }
+
+    public void registerCollector(Collector collector) {
+        collectors.add(collector);
+    }
+
+    /**
+     * Renders every metric in the Prometheus text exposition format.
+     */
+    public String scrape() {
+        StringBuilder out = new StringBuilder(4096);
+        tickDuration.writePrometheus(out, PREFIX + "tick_duration_seconds", "Time spent simulating one room tick.");
+        gcPauses.writePrometheus(out, PREFIX + "gc_pause_seconds", "Garbage collection pause durations.");
+        writeByType(out, "inbound_packets_total", "Datagrams received, by message type.", inboundPackets);
+        writeByType(out, "inbound_bytes_total", "Bytes received, by message type.", inboundBytes);
+        writeByType(out, "inbound_rate_limited_total", "Datagrams dropped for exceeding a client's rate budget, by message type.", inboundRateLimited);
+        writeByType(out, "outbound_messages_total", "Messages queued to clients, by message type.", outboundMessages);
+        writeByType(out, "outbound_bytes_total", "Message bytes queued to clients, by message type.", outboundBytes);
+        out.append("# HELP ").append(PREFIX).append("inbound_dropped_total Datagrams dropped because a room's inbound queue was full.\n");
+        out.append("# TYPE ").append(PREFIX).append("inbound_dropped_total counter\n");
+        out.append(PREFIX).append("inbound_dropped_total ").append(inboundDropped.sum()).append('\n');
+        out.append("# HELP ").append(PREFIX).append("reliable_retransmits_total Reliable messages sent again for lack of an ack.\n");
+        out.append("# TYPE ").append(PREFIX).append("reliable_retransmits_total counter\n");
+        out.append(PREFIX).append("reliable_retransmits_total ").append(reliableRetransmits.sum()).append('\n');
+        out.append("# HELP ").append(PREFIX).append("reliable_overflows_total Clients dropped because their reliable channel was full.\n");
+        out.append("# TYPE ").append(PREFIX).append("reliable_overflows_total counter\n");
+        out.append(PREFIX).append("reliable_overflows_total ").append(reliableOverflows.sum()).append('\n');
+        out.append("# HELP ").append(PREFIX).append("fragmented_messages_total Messages too big for one datagram, sent in fragments.\n");
+        out.append("# TYPE ").append(PREFIX).append("fragmented_messages_total counter\n");
+        out.append(PREFIX).append("fragmented_messages_total ").append(fragmentedMessages.sum()).append('\n');
+        out.append("# HELP ").append(PREFIX).append("fragments_total FRAGMENT datagrams sent.\n");
+        out.append("# TYPE ").append(PREFIX).append("fragments_total counter\n");
+        out.append(PREFIX).append("fragments_total ").append(fragments.sum()).append('\n');
+        out.append("# HELP ").append(PREFIX).append("sessions_timed_out_total Players removed after going silent.\n");
+        out.append("# TYPE ").append(PREFIX).append("sessions_timed_out_total counter\n");
+        out.append(PREFIX).append("sessions_timed_out_total ").append(sessionsTimedOut.sum()).append('\n');
+        gauges.forEach((name, gauge) -> {
+            out.append("# HELP ").append(name).append(' ').append(gauge.help).append('\n');
+            out.append("# TYPE ").append(name).append(' ').append(gauge.type).append('\n');
+            out.append(name).append(' ').append(gauge.value.getAsLong()).append('\n');
+        });
+        for (Collector collector : collectors) {
+            collector.collect(out);
+        }
+        return out.toString();
+    }
+
+    private void writeByType(StringBuilder out, String name, String help, LongAdder[] values) {
+        out.append("# HELP ").append(PREFIX).append(name).append(' ').append(help).append('\n');
+        out.append("# TYPE ").append(PREFIX).append(name).append(" counter\n");
+        for (int i = 0; i < values.length; i++) {
+            long value = values[i].sum();
+            if (value == 0 && TYPE_NAMES[i] == null) continue;
+            String type = TYPE_NAMES[i] != null ? TYPE_NAMES[i] : "UNKNOWN_" + i;
+            out.append(PREFIX).append(name).append("{type=\"").append(type).append("\"} ").append(value).append('\n');
+        }
+    }
+
+    /**
+     * Serves /metrics on the loopback interface.
+     */
+    public void startHttp(int port) throws IOException {
+        httpServer = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        httpServer.createContext("/metrics", exchange -> {
+            byte[] body = scrape().getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream output = exchange.getResponseBody()) {
+                output.write(body);
+            }
+        });
+        httpServer.start();
+        System.out.println("[Server] Metrics available at http://localhost:" + port + "/metrics");
+    }
+
+    public void registerMBean() {
+        try {
+            objectName = new ObjectName("com.example.server:type=ServerMetrics");
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+        } catch (Exception e) {
+            System.err.println("[Server] Could not register metrics MBean: " + e.getMessage());
+        }
+    }
+
+    public void stop() {
+        if (httpServer != null) {
+            httpServer.stop(0);
+        }
+        if (objectName != null) {
+            try {
+                ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+            } catch (Exception e) {
+                // Silent fail
+            }
+        }
+    }
+
+    @Override
+    public long getTickCount() {
+        return tickDuration.getCount();
+    }
+
+    @Override
+    public double getTickMeanMillis() {
+        long count = tickDuration.getCount();
+        return count == 0 ? 0 : tickDuration.getSumNanos() / (double) count / MILLIS;
+    }
+
+    @Override
+    public long getInboundPackets() {
+        return sum(inboundPackets);
+    }
+
+    @Override
+    public long getInboundBytes() {
+        return sum(inboundBytes);
+    }
+
+    @Override
+    public long getInboundDropped() {
+        return inboundDropped.sum();
+    }
+
+    @Override
+    public long getReliableRetransmits() {
+        return reliableRetransmits.sum();
+    }
+
+    @Override
+    public long getReliableOverflows() {
+        return reliableOverflows.sum();
+    }
+
+    @Override
+    public long getFragmentedMessages() {
+        return fragmentedMessages.sum();
+    }
+
+    @Override
+    public long getSessionsTimedOut() {
+        return sessionsTimedOut.sum();
+    }
+
+    @Override
+    public long getInboundRateLimited() {
+        return sum(inboundRateLimited);
+    }
+
+    @Override
+    public long getOutboundMessages() {
+        return sum(outboundMessages);
+    }
+
+    @Override
+    public long getOutboundBytes() {
+        return sum(outboundBytes);
+    }
+
+    @Override
+    public long getGcPauseCount() {
+        return gcPauses.getCount();
+    }
+
+    @Override
+    public double getGcPauseMillis() {
+        return gcPauses.getSumNanos() / (double) MILLIS;
+    }
+
+    @Override
+    public String[] getGaugeNames() {
+        return gauges.keySet().toArray(new String[0]);
+    }
+
+    @Override
+    public long getGauge(String name) {
+        Gauge gauge = gauges.get(name.startsWith(PREFIX) ? name : PREFIX + name);
+        return gauge != null ? gauge.value.getAsLong() : 0;
+    }
+
+    private static long sum(LongAdder[] adders) {
+        long total = 0;
+        for (LongAdder adder : adders) {
+            total += adder.sum();
+        }
+        return total;
+    }
+}
@@ -0,0 +1,38 @@
+package com.example.server;
+
+/**
+ * JMX view of {@link ServerMetrics}, registered as com.example.server:type=ServerMetrics.
+ */
+public interface ServerMetricsMBean {
+    long getTickCount();
+
+    double getTickMeanMillis();
+
+    long getInboundPackets();
+
+    long getInboundBytes();
+
+    long getInboundDropped();
+
+    long getInboundRateLimited();
+
+    long getSessionsTimedOut();
+
+    long getFragmentedMessages();
+
+    long getReliableRetransmits();
+
+    long getReliableOverflows();
+
+    long getOutboundMessages();
+
+    long getOutboundBytes();
+
+    long getGcPauseCount();
+
+    double getGcPauseMillis();
+
+    String[] getGaugeNames();
+
+    long getGauge(String name);
+}
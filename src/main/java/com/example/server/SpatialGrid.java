@@ -0,0 +1,75 @@
+package com.example.server;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Uniform grid over the map used to find nearby entities without scanning every
+ * player. Positions outside the map are clamped to the border cells. Not thread
+ * safe, only the server loop touches it.
+ */
+public class SpatialGrid<T> {
+    private final float cellSize;
+    private final int columns;
+    private final int rows;
+    private final List<List<T>> cells;
+
+    public SpatialGrid(float width, float height, float cellSize) {
+        this.cellSize = cellSize;
+        this.columns = Math.max(1, (int) Math.ceil(width / cellSize));
+        this.rows = Math.max(1, (int) Math.ceil(height / cellSize));
+        this.cells = new ArrayList<>(columns * rows);
+        for (int i = 0; i < columns * rows; i++) {
+            cells.add(new ArrayList<>());
+        }
+    }
+
+    public void insert(T item, float x, float y) {
+        cells.get(cellIndex(x, y)).add(item);
+    }
+
+    public void remove(T item, float x, float y) {
+        cells.get(cellIndex(x, y)).remove(item);
+    }
+
+    public void move(T item, float oldX, float oldY, float newX, float newY) {
+        int oldCell = cellIndex(oldX, oldY);
+        int newCell = cellIndex(newX, newY);
+        if (oldCell != newCell) {
+            cells.get(oldCell).remove(item);
+            cells.get(newCell).add(item);
+        }
+    }
+
+    /**
+     * Visits every item in the cells overlapping the square around (x, y). This is
+     * a coarse filter; callers still check the exact distance.
+     */
+    public void forEachNear(float x, float y, float radius, Consumer<T> visitor) {
+        int minColumn = column(x - radius);
+        int maxColumn = column(x + radius);
+        int minRow = row(y - radius);
+        int maxRow = row(y + radius);
+        for (int row = minRow; row <= maxRow; row++) {
+            for (int col = minColumn; col <= maxColumn; col++) {
+                List<T> cell = cells.get(row * columns + col);
+                for (int i = 0; i < cell.size(); i++) {
+                    visitor.accept(cell.get(i));
+                }
+            }
+        }
+    }
+
+    private int cellIndex(float x, float y) {
+        return row(y) * columns + column(x);
+    }
+
+    private int column(float x) {
+        return Math.min(columns - 1, Math.max(0, (int) (x / cellSize)));
+    }
+
+    private int row(float y) {
+        return Math.min(rows - 1, Math.max(0, (int) (y / cellSize)));
+    }
+}
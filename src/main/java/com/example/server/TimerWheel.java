@@ -0,0 +1,146 @@
+package com.example.server;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Hashed timing wheel for delayed game actions, advanced once per simulation
+ * tick. Scheduling and cancelling are O(1) and nothing sleeps; timers fire on
+ * the thread that calls {@link #advance}, so they may touch room state directly.
+ * Not thread safe, only the owning room's worker may use it.
+ */
+public class TimerWheel {
+    private final Timeout[] buckets;
+    private final int mask;
+    private final List<Timeout> expired = new ArrayList<>();
+    private long currentTick = 0;
+    private volatile int pendingCount = 0;
+
+    /**
+     * Handle to a scheduled action.
+     */
+    public static final class Timeout {
+        private final Runnable task;
+        private final long deadline;
+        private TimerWheel wheel;
+        private Timeout prev;
+        private Timeout next;
+        private boolean linked;
+        private boolean cancelled;
+
+        private Timeout(Runnable task, long deadline) {
+            this.task = task;
+            this.deadline = deadline;
+        }
+
+        /**
+         * Stops the action from running. Returns false if it already ran or was
+         * already cancelled.
+         */
+        public boolean cancel() {
+            if (cancelled || wheel == null) return false;
+            cancelled = true;
+            wheel.unlink(this);
+            wheel = null;
+            return true;
+        }
+
+        public boolean isPending() {
+            return wheel != null && !cancelled;
+        }
+    }
+
+    /**
+     * @param size number of buckets, rounded up to a power of two. Delays longer
+     *             than the wheel simply stay in their bucket for extra laps.
+     */
+    public TimerWheel(int size) {
+        int capacity = Integer.highestOneBit(Math.max(1, size - 1)) << 1;
+        buckets = new Timeout[capacity];
+        mask = capacity - 1;
+    }
+
+    /**
+     * Runs the task after the given number of ticks, at least one.
+     */
+    public Timeout schedule(long delayTicks, Runnable task) {
+        Timeout timeout = new Timeout(task, currentTick + Math.max(1, delayTicks));
+        int index = (int) (timeout.deadline & mask);
+        timeout.wheel = this;
+        timeout.linked = true;
+        timeout.next = buckets[index];
+        if (timeout.next != null) {
+            timeout.next.prev = timeout;
+        }
+        buckets[index] = timeout;
+        pendingCount++;
+        return timeout;
+    }
+
+    /**
+     * Moves the wheel forward one tick and runs every timer that is now due.
+     */
+    public void advance() {
+        currentTick++;
+        int index = (int) (currentTick & mask);
+        for (Timeout timeout = buckets[index]; timeout != null; timeout = timeout.next) {
+            if (timeout.deadline <= currentTick) {
+                expired.add(timeout);
+            }
+        }
+        // Unlink first so tasks can freely schedule or cancel other timers
+        for (int i = 0; i < expired.size(); i++) {
+            unlink(expired.get(i));
+        }
+        for (int i = 0; i < expired.size(); i++) {
+            Timeout timeout = expired.get(i);
+            if (!timeout.cancelled) {
+                timeout.wheel = null;
+                timeout.task.run();
+            }
+        }
+        expired.clear();
+    }
+
+    /**
+     * Drops every pending timer without running it.
+     */
+    public void clear() {
+        for (int i = 0; i < buckets.length; i++) {
+            Timeout timeout = buckets[i];
+            while (timeout != null) {
+                Timeout next = timeout.next;
+                timeout.wheel = null;
+                timeout.linked = false;
+                timeout.prev = null;
+                timeout.next = null;
+                timeout = next;
+            }
+            buckets[i] = null;
+        }
+        pendingCount = 0;
+    }
+
+    /**
+     * Number of scheduled timers that have not yet fired. Safe to read from any thread.
+     */
+    public int getPendingCount() {
+        return pendingCount;
+    }
+
+    private void unlink(Timeout timeout) {
+        if (!timeout.linked) return;
+        if (timeout.prev != null) {
+            timeout.prev.next = timeout.next;
+        } else {
+            buckets[(int) (timeout.deadline & mask)] = timeout.next;
+        }
+        if (timeout.next != null) {
+            timeout.next.prev = timeout.prev;
+        }
+        timeout.linked = false;
+        timeout.prev = null;
+        timeout.next = null;
+        pendingCount--;
+    }
+}
@@ -3,27 +3,52 @@ package com.example.ui;
 import com.badlogic.gdx.graphics.Color;
 import com.badlogic.gdx.graphics.g2d.BitmapFont;
 import com.badlogic.gdx.graphics.g2d.SpriteBatch;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
-import java.util.TreeMap;
+import java.util.function.IntFunction;
 
 public class ScoreDisplay {
     private final BitmapFont font;
     private final float x;
     private final float y;
-    private final String localPlayerId;
-    private Map<String, Integer> scores = new TreeMap<>();
-    private String winner = null;
+    // Handle of the local player, 0 until the server assigns one
+    private volatile int localPlayerId;
+    // Ranked rows, rebuilt on each score message and swapped in whole for the render thread
+    private volatile List<Row> rows = new ArrayList<>();
+    private volatile String winner = null;
 
-    public ScoreDisplay(float x, float y, String localPlayerId) {
+    private static class Row {
+        final int playerId;
+        final String text;
+
+        Row(int playerId, String name, int score) {
+            this.playerId = playerId;
+            this.text = name + ": " + score;
+        }
+    }
+
+    public ScoreDisplay(float x, float y) {
         this.font = new BitmapFont();
         this.font.setColor(Color.WHITE);
         this.x = x;
         this.y = y;
+    }
+
+    public void setLocalPlayerId(int localPlayerId) {
         this.localPlayerId = localPlayerId;
     }
 
-    public void updateScores(Map<String, Integer> newScores, String winner) {
-        this.scores = new TreeMap<>(newScores);
+    /**
+     * Lists the players in the given order, which is the server's ranking.
+     * Display names can be shared, so rows are told apart by handle.
+     */
+    public void updateScores(List<Integer> ranking, Map<Integer, Integer> scores, IntFunction<String> names, String winner) {
+        List<Row> ranked = new ArrayList<>(ranking.size());
+        for (int playerId : ranking) {
+            ranked.add(new Row(playerId, names.apply(playerId), scores.getOrDefault(playerId, 0)));
+        }
+        this.rows = ranked;
         this.winner = winner;
     }
 
@@ -34,24 +59,23 @@ public class ScoreDisplay {
 
         // Draw scores
         final float scoreStartY = y - 20;
-        int index = 0;
-        for (Map.Entry<String, Integer> entry : scores.entrySet()) {
-            String playerId = entry.getKey();
-            int score = entry.getValue();
-            
-            if (playerId.equals(localPlayerId)) {
+        List<Row> current = rows;
+        int local = localPlayerId;
+        for (int index = 0; index < current.size(); index++) {
+            Row row = current.get(index);
+            if (row.playerId == local) {
                 font.setColor(Color.GREEN);
             } else {
                 font.setColor(Color.WHITE);
             }
-            font.draw(batch, String.format("%s: %d", playerId, score), x, scoreStartY - (index * 20));
-            index++;
+            font.draw(batch, row.text, x, scoreStartY - (index * 20));
         }
 
         // Draw winner if game is over
-        if (winner != null) {
+        String currentWinner = winner;
+        if (currentWinner != null) {
             font.setColor(Color.GOLD);
-            font.draw(batch, "WINNER: " + winner, x, scoreStartY - (scores.size() + 1) * 20);
+            font.draw(batch, "WINNER: " + currentWinner, x, scoreStartY - (current.size() + 1) * 20);
         }
     }
 
@@ -0,0 +1,56 @@
+package com.example.server;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.example.protocol.Protocol;
+
+public class DuplicateNameTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Leaderboard leaderboard;
+    private RoomFixture fixture;
+    private RoomFixture otherRoom;
+
+    @Before
+    public void setUp() throws IOException {
+        leaderboard = new Leaderboard(folder.getRoot().toPath());
+        fixture = new RoomFixture(1, null, leaderboard);
+        otherRoom = new RoomFixture(0, null, leaderboard);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        fixture.close();
+        otherRoom.close();
+    }
+
+    @Test
+    public void secondSessionUnderALiveNameGetsNoCareer() throws IOException {
+        InetSocketAddress original = fixture.clients.get(0);
+        assertEquals("Player0", fixture.room.getCareer(original));
+
+        InetSocketAddress sameRoom = fixture.join("Player0");
+        InetSocketAddress elsewhere = otherRoom.join("Player0");
+        assertEquals(2, fixture.room.getPlayerCount());
+        assertNull(fixture.room.getCareer(sameRoom));
+        assertNull(otherRoom.room.getCareer(elsewhere));
+        assertEquals("Player0", fixture.room.getCareer(original));
+
+        // Once the owner leaves the name can be played again
+        fixture.room.deliver(fixture.packet(Protocol.DISCONNECT), original);
+        fixture.drain();
+        InetSocketAddress returning = otherRoom.join("Player0");
+        assertEquals("Player0", otherRoom.room.getCareer(returning));
+    }
+}
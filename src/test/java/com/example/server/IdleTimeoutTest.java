@@ -0,0 +1,54 @@
+package com.example.server;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.example.protocol.Protocol;
+
+public class IdleTimeoutTest {
+    private static final int TICK_RATE = 60;
+    // The default timeout is 10 s; run well past several of them
+    private static final int TICKS = 60 * TICK_RATE;
+    private static final int ACK_INTERVAL_TICKS = TICK_RATE / 20;
+
+    private RoomFixture fixture;
+    private InetSocketAddress active;
+    private InetSocketAddress silent;
+    private ByteBuffer ack;
+
+    @Before
+    public void setUp() throws IOException {
+        fixture = new RoomFixture(2);
+        active = fixture.clients.get(0);
+        silent = fixture.clients.get(1);
+        ack = fixture.packet(Protocol.SNAPSHOT_ACK, 0, 0, 0);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        fixture.close();
+    }
+
+    @Test
+    public void playerWhoKeepsSendingIsNeverRemoved() {
+        for (int tick = 1; tick <= TICKS; tick++) {
+            if (tick % ACK_INTERVAL_TICKS == 0) {
+                fixture.room.deliver(ack.rewind(), active);
+            }
+            fixture.tick();
+            assertTrue("Active player removed after " + tick + " ticks",
+                fixture.room.getPlayerAddresses().contains(active));
+        }
+        assertEquals(1, fixture.room.getPlayerCount());
+        assertFalse(fixture.room.getPlayerAddresses().contains(silent));
+    }
+}
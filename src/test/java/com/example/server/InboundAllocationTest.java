@@ -0,0 +1,76 @@
+package com.example.server;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assume.assumeTrue;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.example.protocol.Protocol;
+
+/**
+ * The steady-state inbound path, from deliver() through decoding and dispatch
+ * to the relayed messages landing in client batches, must not allocate. Ticks
+ * are not covered, they build snapshots, and neither is the hand-off to the
+ * sender threads: those are stopped, so full outboxes just drop their oldest
+ * datagram on the room thread.
+ */
+public class InboundAllocationTest {
+    private static final int WARMUP_PACKETS = 50_000;
+    private static final int MEASURED_PACKETS = 20_000;
+    private static final int MEASURED_ROUNDS = 3;
+
+    private com.sun.management.ThreadMXBean threads;
+    private RoomFixture fixture;
+    private InetSocketAddress client;
+    private ByteBuffer ack;
+    private int positionSequence;
+
+    @Before
+    public void setUp() throws IOException {
+        threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        assumeTrue(threads.isThreadAllocatedMemorySupported());
+        threads.setThreadAllocatedMemoryEnabled(true);
+        fixture = new RoomFixture(8);
+        fixture.sender.stop();
+        client = fixture.clients.get(0);
+        ack = fixture.packet(Protocol.SNAPSHOT_ACK, 1, 0, 0);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        if (fixture != null) {
+            fixture.close();
+        }
+    }
+
+    @Test
+    public void positionsAndAcksDoNotAllocate() {
+        // Warm up first, so the measured loop runs compiled code
+        handle(WARMUP_PACKETS);
+        // A deoptimization can put a few objects the compiler had scalar replaced back
+        // on the heap, so take the best round. Allocating per packet fails every round.
+        long allocated = Long.MAX_VALUE;
+        for (int round = 0; round < MEASURED_ROUNDS && allocated > 0; round++) {
+            long before = threads.getCurrentThreadAllocatedBytes();
+            handle(MEASURED_PACKETS);
+            allocated = threads.getCurrentThreadAllocatedBytes() - before;
+        }
+        assertEquals("Bytes allocated handling " + MEASURED_PACKETS + " packets", 0, allocated);
+    }
+
+    private void handle(int packets) {
+        for (int i = 0; i < packets; i += 2) {
+            // Alternate between two nearby spots so every position is applied and relayed
+            fixture.room.deliver(fixture.position(0, 400 + 10 * (i & 2), 300, ++positionSequence), client);
+            fixture.room.deliver(ack.rewind(), client);
+            fixture.drain();
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package com.example.server;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import com.example.protocol.Protocol;
+
+public class InboundLimiterTest {
+    // Movement allows 30 a second with a burst of 30
+    private static final int BURST = 30;
+    private static final long INTERVAL = 1_000_000_000L / 30;
+    private static final long START = 5_000_000_000L;
+
+    @Test
+    public void burstThenDropThenRefill() {
+        InboundLimiter limiter = new InboundLimiter(START);
+        for (int i = 0; i < BURST; i++) {
+            assertTrue("Message " + i + " of the burst dropped", limiter.tryAcquire(Protocol.POS, START));
+        }
+        assertFalse(limiter.tryAcquire(Protocol.POS, START));
+        assertFalse(limiter.tryAcquire(Protocol.POS, START + INTERVAL - 1));
+        assertEquals(2, limiter.getDropped(InboundLimiter.MOVEMENT));
+
+        // One interval later exactly one more token is due
+        assertTrue(limiter.tryAcquire(Protocol.POS, START + INTERVAL));
+        assertFalse(limiter.tryAcquire(Protocol.POS, START + INTERVAL));
+
+        // After a quiet second the whole burst is back
+        long later = START + INTERVAL + 1_000_000_000L + INTERVAL;
+        for (int i = 0; i < BURST; i++) {
+            assertTrue("Message " + i + " after the refill dropped", limiter.tryAcquire(Protocol.POS, later));
+        }
+        assertFalse(limiter.tryAcquire(Protocol.POS, later));
+        assertEquals(4, limiter.getDropped(InboundLimiter.MOVEMENT));
+    }
+
+    @Test
+    public void classesHaveSeparateBudgets() {
+        InboundLimiter limiter = new InboundLimiter(START);
+        for (int i = 0; i <= BURST; i++) {
+            limiter.tryAcquire(Protocol.POS, START);
+        }
+        assertTrue(limiter.tryAcquire(Protocol.SHOOT, START));
+        assertTrue(limiter.tryAcquire(Protocol.SNAPSHOT_ACK, START));
+        assertEquals(0, limiter.getDropped(InboundLimiter.COMBAT));
+        assertEquals(0, limiter.getDropped(InboundLimiter.CONTROL));
+    }
+
+    @Test
+    public void unlimitedNeverDrops() {
+        InboundLimiter limiter = InboundLimiter.unlimited(START);
+        for (int i = 0; i < 10_000; i++) {
+            assertTrue(limiter.tryAcquire(Protocol.POS, START));
+        }
+        assertEquals(0, limiter.getDropped(InboundLimiter.MOVEMENT));
+    }
+}
@@ -0,0 +1,86 @@
+package com.example.server;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class LeaderboardTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void careerSurvivesRestart() throws IOException {
+        Path directory = folder.getRoot().toPath();
+        Leaderboard leaderboard = new Leaderboard(directory);
+        leaderboard.start();
+        leaderboard.recordKill("alice", "bob");
+        leaderboard.stop();
+
+        Leaderboard reopened = new Leaderboard(directory);
+        assertEquals(1, reopened.getCareer("alice").getKills());
+        assertEquals(0, reopened.getCareer("alice").getDeaths());
+        assertEquals(1, reopened.getCareer("bob").getDeaths());
+
+        // A later session under the same name adds to the same career
+        reopened.start();
+        reopened.recordKill("bob", "alice");
+        reopened.stop();
+        Leaderboard again = new Leaderboard(directory);
+        assertEquals(1, again.getCareer("alice").getKills());
+        assertEquals(1, again.getCareer("alice").getDeaths());
+        assertEquals(2, again.getPlayerCount());
+    }
+
+    @Test
+    public void guestsKeepNoCareer() throws IOException {
+        Path directory = folder.getRoot().toPath();
+        Leaderboard leaderboard = new Leaderboard(directory);
+        leaderboard.start();
+        leaderboard.recordKill("alice", null);
+        leaderboard.recordKill(null, "alice");
+        leaderboard.stop();
+
+        Leaderboard reopened = new Leaderboard(directory);
+        assertEquals(1, reopened.getPlayerCount());
+        assertEquals(1, reopened.getCareer("alice").getKills());
+        assertEquals(1, reopened.getCareer("alice").getDeaths());
+        assertNull(reopened.getCareer(""));
+    }
+
+    @Test
+    public void killsSurviveCompaction() throws IOException {
+        Path directory = folder.getRoot().toPath();
+        // A small threshold compacts several times over the run
+        Leaderboard leaderboard = new Leaderboard(directory, 4096);
+        leaderboard.start();
+        for (int i = 0; i < 2000; i++) {
+            leaderboard.recordKill("alice", "bob" + i % 10);
+        }
+        leaderboard.stop();
+        assertEquals(2000, leaderboard.getCommittedCount());
+        assertTrue(Files.exists(directory.resolve("leaderboard.snapshot")));
+        assertTrue(Files.size(directory.resolve("leaderboard.wal")) < 4096 + 1024 * 40);
+
+        Leaderboard reopened = new Leaderboard(directory, 4096);
+        assertEquals(2000, reopened.getCareer("alice").getKills());
+        assertEquals(200, reopened.getCareer("bob3").getDeaths());
+        assertEquals(11, reopened.getPlayerCount());
+
+        // Kills logged after a compaction are counted once on top of the snapshot
+        reopened.start();
+        reopened.recordKill("bob3", "alice");
+        reopened.stop();
+        Leaderboard again = new Leaderboard(directory, 4096);
+        assertEquals(2000, again.getCareer("alice").getKills());
+        assertEquals(1, again.getCareer("alice").getDeaths());
+        assertEquals(1, again.getCareer("bob3").getKills());
+    }
+}
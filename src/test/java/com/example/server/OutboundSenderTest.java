@@ -0,0 +1,154 @@
+package com.example.server;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.util.Arrays;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.example.protocol.FragmentAssembler;
+import com.example.protocol.PacketReader;
+import com.example.protocol.PacketWriter;
+import com.example.protocol.Protocol;
+
+public class OutboundSenderTest {
+    private static final int CAPACITY = 8;
+    // Well past the first retransmission timeout
+    private static final long DEADLINE_NANOS = 3_000_000_000L;
+
+    private DatagramChannel channel;
+    private DatagramChannel client;
+    private InetSocketAddress clientAddress;
+    private OutboundSender sender;
+    private final ByteBuffer datagram = ByteBuffer.allocate(Protocol.MAX_PACKET_SIZE);
+
+    @Before
+    public void setUp() throws IOException {
+        channel = DatagramChannel.open();
+        channel.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+        client = DatagramChannel.open();
+        client.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+        clientAddress = (InetSocketAddress) client.getLocalAddress();
+        // Not started, so nothing leaves the outbox until a test says so
+        sender = new OutboundSender(channel, 1, OutboundSender.OverflowPolicy.DROP_OLDEST, CAPACITY);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        sender.stop();
+        channel.close();
+        client.close();
+    }
+
+    @Test
+    public void fragmentsAreQueuedWholeAndNeverEvicted() throws IOException {
+        OutboundSender.Outbox outbox = sender.createOutbox(clientAddress);
+        for (int i = 0; i < 4; i++) {
+            sender.enqueue(outbox, single(i));
+        }
+        // Two singles make way for six fragments
+        assertTrue(sender.reserve(outbox, 6));
+        for (int i = 0; i < 6; i++) {
+            sender.enqueue(outbox, fragment(i, 6));
+        }
+        // The remaining singles make way, then the fragments at the front turn new datagrams away
+        for (int i = 4; i < 7; i++) {
+            sender.enqueue(outbox, single(i));
+        }
+        assertFalse(sender.reserve(outbox, 2));
+        assertEquals(CAPACITY, outbox.getQueueDepth());
+        assertEquals(2 + 2 + 1 + 2, sender.getDroppedCount());
+
+        sender.start();
+        for (int i = 0; i < 6; i++) {
+            ByteBuffer received = receive();
+            assertEquals(Protocol.FRAGMENT, received.get(1));
+            assertEquals(i, received.get(3));
+        }
+        assertEquals(4, receive().get(2));
+        assertEquals(5, receive().get(2));
+    }
+
+    @Test
+    public void messageTurnedAwayByAFullOutboxIsResent() throws IOException, InterruptedException {
+        GameRoom room = new GameRoom(0, sender, new ServerMetrics(), null, null, InboundLimiter::unlimited);
+        room.deliver(clientPacket(new PacketWriter().begin(Protocol.JOIN).writeVarInt(0).writeString("Player")),
+            clientAddress);
+        room.update(room.getNextTick());
+        // The first fills most of the outbox with its fragments, the second finds no room
+        ByteBuffer first = scores(0);
+        ByteBuffer second = scores(1);
+        room.sendTo(clientAddress, first);
+        room.sendTo(clientAddress, second);
+        assertTrue(sender.getDroppedCount() > 0);
+        byte[] firstContents = Arrays.copyOfRange(first.array(), 1, first.limit());
+        byte[] secondContents = Arrays.copyOfRange(second.array(), 1, second.limit());
+
+        sender.start();
+        client.configureBlocking(false);
+        FragmentAssembler assembler = new FragmentAssembler();
+        boolean firstArrived = false;
+        boolean secondArrived = false;
+        long deadline = System.nanoTime() + DEADLINE_NANOS;
+        while (!(firstArrived && secondArrived) && System.nanoTime() - deadline < 0) {
+            datagram.clear();
+            if (client.receive(datagram) == null) {
+                room.update(room.getNextTick());
+                Thread.sleep(5);
+                continue;
+            }
+            datagram.flip();
+            PacketReader message = new PacketReader(datagram);
+            if (message.readHeader() != Protocol.FRAGMENT) continue;
+            PacketReader whole = assembler.add(message, System.nanoTime());
+            if (whole == null) continue;
+            whole.readType(); // RELIABLE
+            whole.readVarInt(); // Its sequence
+            byte[] contents = whole.readRemaining();
+            firstArrived |= Arrays.equals(firstContents, contents);
+            secondArrived |= Arrays.equals(secondContents, contents);
+        }
+        assertTrue("The queued message never arrived", firstArrived);
+        assertTrue("The turned away message was never resent", secondArrived);
+        room.stop();
+    }
+
+    // A score table several datagrams long
+    private static ByteBuffer scores(int salt) {
+        PacketWriter scores = new PacketWriter(Protocol.MAX_MESSAGE_SIZE + 1).begin(Protocol.SCORES).writeVarInt(1000);
+        for (int i = 0; i < 1000; i++) {
+            scores.writeVarInt(RoomFixture.handle(i % 64)).writeVarInt(i + salt);
+        }
+        return clientPacket(scores.writeBoolean(false));
+    }
+
+    private static ByteBuffer clientPacket(PacketWriter message) {
+        ByteBuffer copy = ByteBuffer.allocate(message.size());
+        copy.put(message.toBuffer()).flip();
+        return copy;
+    }
+
+    private static ByteBuffer single(int index) {
+        return ByteBuffer.wrap(new byte[] {Protocol.VERSION, Protocol.BATCH, (byte) index});
+    }
+
+    private static ByteBuffer fragment(int index, int count) {
+        return ByteBuffer.wrap(new byte[] {Protocol.VERSION, Protocol.FRAGMENT, 1, (byte) index, (byte) count, 0});
+    }
+
+    private ByteBuffer receive() throws IOException {
+        datagram.clear();
+        client.receive(datagram);
+        datagram.flip();
+        return datagram;
+    }
+}
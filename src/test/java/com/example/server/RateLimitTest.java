@@ -0,0 +1,59 @@
+package com.example.server;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.example.protocol.Protocol;
+
+public class RateLimitTest {
+    private static final int FLOOD = 200;
+
+    private RoomFixture fixture;
+    private InetSocketAddress flooder;
+    private InetSocketAddress neighbour;
+    private ByteBuffer shot;
+
+    @Before
+    public void setUp() throws IOException {
+        fixture = new RoomFixture(2, null, null, InboundLimiter::new);
+        flooder = fixture.clients.get(0);
+        neighbour = fixture.clients.get(1);
+        shot = fixture.packet(fixture.begin(Protocol.SHOOT).writeFloat(100).writeFloat(100).writeFloat(1).writeFloat(0));
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        fixture.close();
+    }
+
+    @Test
+    public void floodingSessionIsDroppedOthersAreNot() {
+        for (int i = 1; i <= FLOOD; i++) {
+            fixture.room.deliver(fixture.position(0, 100, 100, i), flooder);
+            fixture.room.deliver(shot.rewind(), flooder);
+            fixture.drain();
+        }
+        // Within the burst of each class, and well within the rates over the test's run
+        for (int i = 1; i <= 20; i++) {
+            assertTrue(fixture.room.deliver(fixture.position(1, 200, 200, i), neighbour));
+            fixture.drain();
+        }
+        assertTrue(fixture.room.deliver(shot.rewind(), neighbour));
+
+        InboundLimiter flooding = fixture.room.getLimiter(flooder);
+        InboundLimiter neighbours = fixture.room.getLimiter(neighbour);
+        // A slow machine refills a few tokens while the flood runs, most are still dropped
+        assertTrue(flooding.getDropped(InboundLimiter.MOVEMENT) > FLOOD / 2);
+        assertTrue(flooding.getDropped(InboundLimiter.COMBAT) > FLOOD / 2);
+        assertEquals(0, neighbours.getDropped(InboundLimiter.MOVEMENT));
+        assertEquals(0, neighbours.getDropped(InboundLimiter.COMBAT));
+    }
+}
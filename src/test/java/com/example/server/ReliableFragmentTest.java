@@ -0,0 +1,90 @@
+package com.example.server;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotNull;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.util.Arrays;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.example.protocol.FragmentAssembler;
+import com.example.protocol.PacketReader;
+import com.example.protocol.PacketWriter;
+import com.example.protocol.Protocol;
+
+public class ReliableFragmentTest {
+    // Well past the first retransmission timeout
+    private static final long DEADLINE_NANOS = 3_000_000_000L;
+
+    private RoomFixture fixture;
+    private DatagramChannel socket;
+    private final FragmentAssembler assembler = new FragmentAssembler();
+    private final ByteBuffer datagram = ByteBuffer.allocate(Protocol.MAX_PACKET_SIZE);
+
+    @Before
+    public void setUp() throws IOException {
+        fixture = new RoomFixture(1);
+        socket = fixture.socket(0);
+        socket.configureBlocking(false);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        fixture.close();
+    }
+
+    @Test
+    public void lostFragmentOfAReliableMessageIsResent() throws IOException, InterruptedException {
+        // A score table several datagrams long
+        PacketWriter scores = new PacketWriter(Protocol.MAX_MESSAGE_SIZE + 1).begin(Protocol.SCORES).writeVarInt(1000);
+        for (int i = 0; i < 1000; i++) {
+            scores.writeVarInt(RoomFixture.handle(i % 64)).writeVarInt(i);
+        }
+        ByteBuffer message = fixture.packet(scores.writeBoolean(false));
+        byte[] expected = Arrays.copyOfRange(message.array(), 1, message.limit());
+        // Sent from within a tick's time, as the room's own messages are
+        fixture.tick();
+        fixture.room.sendTo(fixture.clients.get(0), message);
+
+        int lostMessage = 0;
+        PacketReader whole = null;
+        int wholeMessage = 0;
+        long deadline = System.nanoTime() + DEADLINE_NANOS;
+        while (whole == null && System.nanoTime() - deadline < 0) {
+            datagram.clear();
+            if (socket.receive(datagram) == null) {
+                fixture.tick();
+                Thread.sleep(5);
+                continue;
+            }
+            datagram.flip();
+            PacketReader header = new PacketReader(datagram.duplicate());
+            if (header.readHeader() != Protocol.FRAGMENT) continue;
+            PacketReader fragment = new PacketReader(datagram);
+            fragment.readHeader();
+            int messageId = header.readVarInt();
+            int index = header.readByte();
+            // The network loses the second piece of the first send
+            if (lostMessage == 0 && index == 1) {
+                lostMessage = messageId;
+                continue;
+            }
+            whole = assembler.add(fragment, System.nanoTime());
+            wholeMessage = messageId;
+        }
+
+        assertNotEquals("No fragment was ever sent", 0, lostMessage);
+        assertNotNull("The message was never resent", whole);
+        assertNotEquals(lostMessage, wholeMessage);
+        assertEquals(Protocol.RELIABLE, whole.readType());
+        whole.readVarInt(); // Reliable sequence
+        assertArrayEquals(expected, whole.readRemaining());
+    }
+}
@@ -0,0 +1,137 @@
+package com.example.server;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.LongFunction;
+
+import com.example.protocol.PacketWriter;
+import com.example.protocol.Protocol;
+
+/**
+ * A single room wired to a real outbound sender. Every simulated client is a
+ * UDP socket bound on loopback, so fan-out pays for actual socket writes.
+ * Clients replay packets far faster than real ones, so unless a test asks for
+ * real limiters nobody is rate limited. Shared by the tests and the JMH
+ * benchmarks.
+ */
+class RoomFixture {
+    final OutboundSender sender;
+    final GameRoom room;
+    final List<InetSocketAddress> clients = new ArrayList<>();
+    private final DatagramChannel channel;
+    private final List<DatagramChannel> sinks = new ArrayList<>();
+    private final PacketWriter writer = new PacketWriter();
+
+    RoomFixture(int players) throws IOException {
+        this(players, null);
+    }
+
+    RoomFixture(int players, MatchRecorder recorder) throws IOException {
+        this(players, recorder, null);
+    }
+
+    RoomFixture(int players, MatchRecorder recorder, Leaderboard leaderboard) throws IOException {
+        this(players, recorder, leaderboard, InboundLimiter::unlimited);
+    }
+
+    RoomFixture(int players, MatchRecorder recorder, Leaderboard leaderboard, LongFunction<InboundLimiter> limiters)
+            throws IOException {
+        channel = DatagramChannel.open();
+        channel.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+        sender = new OutboundSender(channel, 1, OutboundSender.OverflowPolicy.DROP_OLDEST);
+        sender.start();
+        room = new GameRoom(0, sender, new ServerMetrics(), recorder, leaderboard, limiters);
+        for (int i = 0; i < players; i++) {
+            clients.add(join("Player" + i));
+        }
+    }
+
+    /**
+     * Joins one more client from a fresh socket and returns its address.
+     */
+    InetSocketAddress join(String name) throws IOException {
+        DatagramChannel sink = DatagramChannel.open();
+        sink.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+        sinks.add(sink);
+        InetSocketAddress address = (InetSocketAddress) sink.getLocalAddress();
+        room.deliver(packet(begin(Protocol.JOIN).writeString(name)), address);
+        // Keep the inbound queue from filling up with large player counts
+        drain();
+        return address;
+    }
+
+    /**
+     * Socket of the i-th client, for tests that read what the room sent it.
+     */
+    DatagramChannel socket(int index) {
+        return sinks.get(index);
+    }
+
+    /**
+     * Handle of the i-th client, slots are handed out in join order.
+     */
+    static int handle(int index) {
+        return 1 << 16 | index;
+    }
+
+    /**
+     * Starts a client packet addressed to this room.
+     */
+    PacketWriter begin(byte type) {
+        return writer.begin(type).writeVarInt(0);
+    }
+
+    /**
+     * Copies a finished packet so it can be delivered again and again.
+     */
+    ByteBuffer packet(PacketWriter message) {
+        ByteBuffer copy = ByteBuffer.allocate(message.size());
+        copy.put(message.toBuffer()).flip();
+        return copy;
+    }
+
+    /**
+     * A POS from the i-th client. Positions are sequenced, so each one delivered
+     * needs a higher sequence than the last to be applied. Valid until the next
+     * packet is built.
+     */
+    ByteBuffer position(int index, float x, float y, int sequence) {
+        return begin(Protocol.POS).writeVarInt(handle(index)).writeFloat(x).writeFloat(y).writeVarInt(sequence).toBuffer();
+    }
+
+    ByteBuffer packet(byte type, int... varInts) {
+        PacketWriter message = begin(type);
+        for (int value : varInts) {
+            message.writeVarInt(value);
+        }
+        return packet(message);
+    }
+
+    /**
+     * Handles everything delivered so far without running a tick.
+     */
+    void drain() {
+        room.update(room.getNextTick() - 1);
+    }
+
+    /**
+     * Runs exactly one simulation tick, which flushes every client's batch.
+     */
+    void tick() {
+        room.update(room.getNextTick());
+    }
+
+    void close() throws IOException {
+        room.stop();
+        sender.stop();
+        channel.close();
+        for (DatagramChannel sink : sinks) {
+            sink.close();
+        }
+    }
+}